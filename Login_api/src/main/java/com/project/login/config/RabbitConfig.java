@@ -106,4 +106,22 @@ public class RabbitConfig {
         factory.setMessageConverter(converter);
         return factory;
     }
+
+    /**
+     * note.redis.queue 的批量消费：一次最多取 200 条消息，不足时最多等待 1 秒
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory noteStatsBatchListenerFactory(ConnectionFactory connectionFactory,
+                                                                              Jackson2JsonMessageConverter converter) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(200);
+        factory.setReceiveTimeout(1000L);
+        factory.setPrefetchCount(250);
+        factory.setMessageConverter(converter);
+        return factory;
+    }
 }
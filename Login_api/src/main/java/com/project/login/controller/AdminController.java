@@ -42,6 +42,8 @@ import com.project.login.model.dataobject.UserDO;
 import com.project.login.model.entity.NoteEntity;
 import com.project.login.repository.NoteRepository;
 import com.project.login.service.minio.MinioService;
+import com.project.login.service.notestats.NoteStatsRedisStore;
+import com.project.login.service.notestats.NoteStatsWarmupService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -82,6 +84,12 @@ public class AdminController {
     private final UserFollowMapper userFollowMapper;
     private final NoteRepository noteRepository;
     private final MinioService minioService;
+    private final NoteStatsRedisStore noteStatsRedisStore;
+    private final NoteStatsWarmupService noteStatsWarmupService;
+
+    /** 笔记统计运维接口的参数上限：抽样的 key 数（每个 key 一次 MEMORY USAGE）/ 迁移每批的 key 数 */
+    private static final int MAX_STORAGE_SAMPLE = 1000;
+    private static final int MAX_MIGRATE_BATCH_SIZE = 1000;
 
     @Operation(summary = "获取当前所有在线用户")
     @GetMapping("/online-users")
@@ -647,4 +655,36 @@ public class AdminController {
             return StandardResponse.error("获取用户信息失败: " + e.getMessage());
         }
     }
+
+    @Operation(summary = "对比 hash 与 bucketed 两种笔记统计存储格式的单篇内存占用（抽样）")
+    @GetMapping("/note-stats/storage/report")
+    public StandardResponse<NoteStatsRedisStore.MemoryReport> noteStatsStorageReport(
+            @RequestParam(defaultValue = "200") int sample) {
+        int sampleSize = Math.min(Math.max(sample, 1), MAX_STORAGE_SAMPLE);
+        return StandardResponse.success(noteStatsRedisStore.memoryReport(sampleSize));
+    }
+
+    @Operation(summary = "把剩余的旧格式笔记统计 Hash 迁移到桶")
+    @PostMapping("/note-stats/storage/migrate")
+    public StandardResponse<NoteStatsRedisStore.MigrationResult> migrateNoteStatsStorage(
+            @RequestParam(defaultValue = "500") int batchSize) {
+        int size = Math.min(Math.max(batchSize, 1), MAX_MIGRATE_BATCH_SIZE);
+        return StandardResponse.success(noteStatsRedisStore.migrateLegacy(size));
+    }
+
+    @Operation(summary = "从 MySQL 预热笔记统计缓存")
+    @PostMapping("/note-stats/warmup")
+    public StandardResponse<NoteStatsWarmupService.WarmupProgress> startNoteStatsWarmup(
+            @RequestParam(defaultValue = "0") int limit) {
+        if (!noteStatsWarmupService.start(Math.max(limit, 0))) {
+            return StandardResponse.success("预热正在进行中", noteStatsWarmupService.getProgress());
+        }
+        return StandardResponse.success(noteStatsWarmupService.getProgress());
+    }
+
+    @Operation(summary = "查询笔记统计缓存预热进度")
+    @GetMapping("/note-stats/warmup")
+    public StandardResponse<NoteStatsWarmupService.WarmupProgress> noteStatsWarmupProgress() {
+        return StandardResponse.success(noteStatsWarmupService.getProgress());
+    }
 }
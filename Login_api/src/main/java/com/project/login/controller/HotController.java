@@ -5,8 +5,10 @@ import com.project.login.model.vo.NoteSearchVO;
 import com.project.login.service.hot.HotService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.project.login.service.hot.HotBoardKeys;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -21,11 +23,18 @@ public class HotController {
 
     /**
      * 获取热门笔记列表
+     * @param window 榜单窗口：hourly / daily / weekly（时间衰减），realtime（最近一小时精确 Top-N）
+     * @param tag 标签分榜，不传为全站榜
+     * @param page 页码，从 1 开始
      * @return StandardResponse 包装的热门笔记 VO 列表
      */
     @GetMapping("/notes")
-    public StandardResponse<List<NoteSearchVO>> getHotNotes() {
-        List<NoteSearchVO> hotNotes = hotService.getHotNotesDetail();
+    public StandardResponse<List<NoteSearchVO>> getHotNotes(
+            @RequestParam(defaultValue = HotBoardKeys.DEFAULT_WINDOW) String window,
+            @RequestParam(required = false) String tag,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        List<NoteSearchVO> hotNotes = hotService.getHotNotesDetail(window, tag, page, size);
         return StandardResponse.success(hotNotes);
     }
 }
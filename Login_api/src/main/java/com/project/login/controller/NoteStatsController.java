@@ -5,8 +5,11 @@ import com.project.login.model.dataobject.UserFavoriteNoteDO;
 import com.project.login.model.dto.userbehavior.BehaviorType;
 import com.project.login.model.dto.userbehavior.UserBehaviorDTO;
 import com.project.login.model.response.StandardResponse;
+import com.project.login.model.vo.NoteActivityVO;
 import com.project.login.model.vo.NoteStatsVO;
+import com.project.login.service.notestats.NoteActivityService;
 import com.project.login.service.notestats.NoteStatsService;
+import com.project.login.service.notestats.NoteViewTracker;
 import com.project.login.service.notification.NotificationService;
 import com.project.login.service.flink.userbahavior.UserBehaviorService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -30,6 +33,8 @@ import java.util.Collections;
 public class NoteStatsController {
 
     private final NoteStatsService noteStatsService;
+    private final NoteActivityService noteActivityService;
+    private final NoteViewTracker noteViewTracker;
     private final UserBehaviorService userBehaviorService;
     private final UserFavoriteNoteMapper userFavoriteNoteMapper;
     private final NotificationService notificationService;
@@ -47,24 +52,25 @@ public class NoteStatsController {
             @RequestParam String field,
             @RequestParam(defaultValue = "1") long delta) {
 
-        // 幂等性检查：对于点赞和收藏，先检查用户是否已经操作过
+        // 幂等性检查：对于点赞和收藏，先检查用户是否已经操作过；浏览在去重窗口内只计一次
         boolean shouldProceed = true;
         String fieldLower = field.toLowerCase();
 
-        if ("likes".equals(fieldLower)) {
+        if ("views".equals(fieldLower) && delta > 0) {
+            shouldProceed = noteViewTracker.shouldCount(noteId, userId);
+        } else if ("likes".equals(fieldLower)) {
             shouldProceed = checkAndUpdateLikeStatus(noteId, userId, delta > 0);
         } else if ("favorites".equals(fieldLower)) {
             shouldProceed = checkAndUpdateFavoriteStatus(noteId, userId, delta > 0);
         }
 
         if (!shouldProceed) {
-            // 操作无效（重复操作），返回当前统计信息
-            NoteStatsVO vo = noteStatsService.getStats(noteId);
-            return StandardResponse.success(vo);
+            // 操作无效（重复操作），不计入统计
+            return StandardResponse.success("重复操作，未计入统计", noteStatsService.getStats(noteId));
         }
 
-        // 更新笔记统计
-        NoteStatsVO vo = noteStatsService.changeField(noteId, field, delta);
+        // 更新笔记统计（只累加到本地缓冲，返回时与 Redis 合并）
+        noteStatsService.changeField(noteId, field, delta);
 
         // 构建用户行为记录
         UserBehaviorDTO dto = new UserBehaviorDTO();
@@ -111,7 +117,8 @@ public class NoteStatsController {
             notificationService.createNoteFavoriteNotification(userId, noteId);
         }
 
-        return StandardResponse.success(vo);
+        // 合并本地尚未写入 Redis 的增量，调用方能立即看到本次变化
+        return StandardResponse.success(noteStatsService.getStats(noteId));
     }
 
     /**
@@ -229,10 +236,27 @@ public class NoteStatsController {
     }
 
 
+    @Operation(summary = "Get hourly activity of a note over the last N hours (e.g. views in the last 24h / 168h)")
+    @GetMapping("/{noteId}/activity")
+    public StandardResponse<NoteActivityVO> hourlyActivity(
+            @PathVariable Long noteId,
+            @RequestParam(defaultValue = "24") int hours) {
+        return StandardResponse.success(noteActivityService.getHourly(noteId, hours));
+    }
+
+    @Operation(summary = "Get daily activity of a note over the last N days")
+    @GetMapping("/{noteId}/activity/daily")
+    public StandardResponse<NoteActivityVO> dailyActivity(
+            @PathVariable Long noteId,
+            @RequestParam(defaultValue = "30") int days) {
+        return StandardResponse.success(noteActivityService.getDaily(noteId, days));
+    }
+
     @Operation(summary = "Get note statistics")
     @GetMapping("/{noteId}")
     public StandardResponse<NoteStatsVO> get(@PathVariable Long noteId) {
         NoteStatsVO vo = noteStatsService.getStats(noteId);
+        vo.setUniqueViewers(noteViewTracker.uniqueViewers(noteId));
         return StandardResponse.success(vo);
     }
 }
@@ -4,6 +4,7 @@ import com.project.login.model.dto.remark.RemarkDeleteDTO;
 import com.project.login.model.dto.remark.RemarkInsertDTO;
 import com.project.login.model.dto.remark.RemarkSelectByNoteDTO;
 import com.project.login.model.response.StandardResponse;
+import com.project.login.model.vo.RemarkPageVO;
 import com.project.login.model.vo.RemarkVO;
 import com.project.login.service.remark.RemarkService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -38,6 +39,31 @@ public class RemarkController {
         return StandardResponse.success(voList);
     }
 
+    @Operation(summary = "Get a page of top-level comments by cursor")
+    @GetMapping("/note/page")
+    public StandardResponse<RemarkPageVO> getRemarkPageByNote(
+            @RequestParam Long noteId,
+            @RequestParam Long loginUserId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "3") int replySize
+    ) {
+        RemarkPageVO page = remarkService.selectRemarkPage(noteId, cursor, size, replySize, loginUserId);
+        return StandardResponse.success(page);
+    }
+
+    @Operation(summary = "Load more replies of a comment by cursor")
+    @GetMapping("/replies")
+    public StandardResponse<RemarkPageVO> getReplyPage(
+            @RequestParam String parentId,
+            @RequestParam Long loginUserId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        RemarkPageVO page = remarkService.selectReplyPage(parentId, cursor, size, loginUserId);
+        return StandardResponse.success(page);
+    }
+
     @Operation(summary = "Insert a new comment")
     @PostMapping("/insert")
     public StandardResponse<Boolean> insertRemark(@Valid @RequestBody RemarkInsertDTO dto) {
@@ -1,8 +1,8 @@
 package com.project.login.controller;
 
 import com.project.login.model.vo.RemarkVO;
+import com.project.login.websocket.RemarkBroadcaster;
 import lombok.RequiredArgsConstructor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 /**
@@ -13,16 +13,16 @@ import org.springframework.stereotype.Controller;
 @RequiredArgsConstructor
 public class RemarkWebSocketController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final RemarkBroadcaster remarkBroadcaster;
 
     /**
      * 推送新评论到所有订阅该笔记的用户
+     * 评论先进入该笔记 topic 的缓冲区，由 {@link RemarkBroadcaster} 合并成批后异步推送到
+     * /topic/note.{noteId}.comments（消息体为 RemarkVO 数组）
      * @param noteId 笔记ID
      * @param remarkVO 新评论数据
      */
     public void broadcastNewRemark(Long noteId, RemarkVO remarkVO) {
-        // 使用 topic 模式，所有订阅该笔记的用户都能收到
-        String destination = "/topic/note." + noteId + ".comments";
-        messagingTemplate.convertAndSend(destination, remarkVO);
+        remarkBroadcaster.offer(noteId, remarkVO);
     }
 }
@@ -22,6 +22,8 @@ public interface RemarkConvert {
 
     @Mapping(target = "_id", ignore = true) // _id 是由 MongoDB 自动生成的
     @Mapping(target = "createdAt", ignore = true) // 默认设置创建时间为当前时间
+    @Mapping(target = "createdTime", ignore = true)
+    @Mapping(target = "path", ignore = true) // 由父评论的 path 计算
     RemarkDO toDO(RemarkInsertDTO dto);
 
     @Mappings({
@@ -36,6 +38,7 @@ public interface RemarkConvert {
             @Mapping(target = "likeCount",ignore=true),
             @Mapping(source = "replyToUsername",target ="replyToUsername"), // 使用 getReplyToUsername 方法填充 replyToUsername
             @Mapping(target = "replies", ignore = true), // 暂时不处理子评论
+            @Mapping(target = "replyCount", ignore = true),
             @Mapping(target = "LikedOrNot", ignore = true) // 当前用户是否已点赞，可能需要额外计算或通过其它查询填充
     })
     RemarkVO toVO(RemarkDO remarkDO);
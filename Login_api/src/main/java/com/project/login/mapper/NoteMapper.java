@@ -1,5 +1,6 @@
 package com.project.login.mapper;
 
+import com.project.login.model.dataobject.NoteContextDO;
 import com.project.login.model.dataobject.NoteDO;
 import org.apache.ibatis.annotations.*;
 
@@ -37,6 +38,33 @@ public interface NoteMapper {
     @Select("SELECT filename FROM notes WHERE id = #{id} LIMIT 1")
     String selectFileNameByNoteId(Long id);
 
+    /**
+     * 一次 JOIN 查出笔记所在的笔记本、笔记空间、作者以及两级标签名
+     */
+    @Select("""
+            SELECT n.id AS note_id, n.notebook_id, nb.space_id, s.user_id AS owner_id,
+                   tb.name AS notebook_tag, ts.name AS space_tag
+            FROM notes n
+            JOIN notebooks nb ON nb.id = n.notebook_id
+            JOIN note_spaces s ON s.id = nb.space_id
+            LEFT JOIN tags tb ON tb.id = nb.tag_id
+            LEFT JOIN tags ts ON ts.id = s.tag_id
+            WHERE n.id = #{id}
+            LIMIT 1
+            """)
+    NoteContextDO selectContextById(Long id);
+
+    @Select("SELECT id FROM notes WHERE notebook_id = #{notebookId}")
+    List<Long> selectIdsByNotebookId(Long notebookId);
+
+    @Select("""
+            SELECT n.id
+            FROM notes n
+            JOIN notebooks nb ON nb.id = n.notebook_id
+            WHERE nb.space_id = #{spaceId}
+            """)
+    List<Long> selectIdsBySpaceId(Long spaceId);
+
 
     @Select("SELECT id, title, filename, file_type, notebook_id, created_at, updated_at " +
             "FROM notes WHERE notebook_id = #{notebookId} ORDER BY updated_at DESC")
@@ -12,11 +12,24 @@ public interface NoteStatsCompensationMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id")
     void insert(NoteStatsCompensationDO compensation);
 
-    @Select("SELECT * FROM note_stats_compensation WHERE status IN ('PENDING','FAILED') ORDER BY created_at ASC")
-    List<NoteStatsCompensationDO> getPendingOrFailed();
+    /**
+     * 认领一批到期的待补偿记录（需在事务内调用）；被其它节点 / 线程锁住的行直接跳过，可并行消费
+     */
+    @Select("SELECT * FROM note_stats_compensation " +
+            "WHERE status = 'PENDING' AND (next_retry_at IS NULL OR next_retry_at <= NOW()) " +
+            "ORDER BY id LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<NoteStatsCompensationDO> claimPending(@Param("limit") int limit);
+
+    @Update({
+            "<script>",
+            "UPDATE note_stats_compensation SET status = 'DONE', last_error = NULL, updated_at = NOW() WHERE id IN ",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"
+    })
+    int markDone(@Param("ids") List<Long> ids);
 
     @Update("UPDATE note_stats_compensation " +
-            "SET status=#{status}, retry_count=#{retryCount}, updated_at=NOW() " +
+            "SET status=#{status}, retry_count=#{retryCount}, next_retry_at=#{nextRetryAt}, last_error=#{lastError}, updated_at=NOW() " +
             "WHERE id=#{id}")
-    void updateStatus(NoteStatsCompensationDO compensation);
+    void updateRetry(NoteStatsCompensationDO compensation);
 }
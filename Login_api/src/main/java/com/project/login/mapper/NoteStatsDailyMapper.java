@@ -0,0 +1,32 @@
+package com.project.login.mapper;
+
+import com.project.login.model.dataobject.NoteStatsDailyDO;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface NoteStatsDailyMapper {
+
+    /**
+     * 多行 upsert：每日汇总是对当天小时桶的完整求和，重复执行直接覆盖，结果一致
+     */
+    @Insert({
+            "<script>",
+            "INSERT INTO note_stats_daily(note_id, stat_date, views, likes, favorites, comments) VALUES ",
+            "<foreach collection='list' item='d' separator=','>",
+            "(#{d.noteId}, #{d.statDate}, #{d.views}, #{d.likes}, #{d.favorites}, #{d.comments})",
+            "</foreach>",
+            " ON DUPLICATE KEY UPDATE ",
+            "views = VALUES(views), likes = VALUES(likes), favorites = VALUES(favorites), comments = VALUES(comments)",
+            "</script>"
+    })
+    int upsertBatch(@Param("list") List<NoteStatsDailyDO> list);
+
+    @Select("SELECT * FROM note_stats_daily WHERE note_id = #{noteId} " +
+            "AND stat_date BETWEEN #{from} AND #{to} ORDER BY stat_date")
+    List<NoteStatsDailyDO> getRange(@Param("noteId") Long noteId,
+                                    @Param("from") LocalDate from,
+                                    @Param("to") LocalDate to);
+}
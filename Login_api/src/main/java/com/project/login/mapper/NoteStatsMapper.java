@@ -3,6 +3,7 @@ package com.project.login.mapper;
 import com.project.login.model.dataobject.NoteStatsDO;
 import org.apache.ibatis.annotations.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -28,6 +29,23 @@ public interface NoteStatsMapper {
     @Select("SELECT * FROM note_stats ORDER BY last_activity_at DESC LIMIT #{limit}")
     List<NoteStatsDO> getRecentUpdated(@Param("limit") int limit);
 
+    /**
+     * 按活跃时间倒序的游标分页（预热用）；游标为上一页最后一行的 (last_activity_at, note_id)，首页传 null
+     */
+    @Select({
+            "<script>",
+            "SELECT * FROM note_stats",
+            "<if test='lastActivityAt != null'>",
+            "WHERE last_activity_at &lt; #{lastActivityAt} ",
+            "OR (last_activity_at = #{lastActivityAt} AND note_id &lt; #{noteId})",
+            "</if>",
+            "ORDER BY last_activity_at DESC, note_id DESC LIMIT #{limit}",
+            "</script>"
+    })
+    List<NoteStatsDO> getRecentUpdatedAfter(@Param("lastActivityAt") LocalDateTime lastActivityAt,
+                                            @Param("noteId") Long noteId,
+                                            @Param("limit") int limit);
+
     @Select({
             "<script>",
             "SELECT * FROM note_stats WHERE note_id IN ",
@@ -61,4 +79,28 @@ public interface NoteStatsMapper {
             "version = version + 1 " +
             "WHERE note_id = #{noteId} AND version = #{version}")
     int updateTotalsIfVersion(NoteStatsDO noteStats);
+
+    /**
+     * 多行 upsert：不存在则插入，存在则用快照覆盖 totals（GREATEST 防止负数）
+     * 只有快照的 last_activity_at 不早于库中值时才覆盖，防止乱序到达的旧快照回退计数；
+     * last_activity_at 必须最后赋值，前面的条件引用的是更新前的值
+     */
+    @Insert({
+            "<script>",
+            "INSERT INTO note_stats(note_id, author_name, views, likes, favorites, comments, last_activity_at, version) VALUES ",
+            "<foreach collection='list' item='s' separator=','>",
+            "(#{s.noteId}, #{s.authorName}, GREATEST(0, #{s.views}), GREATEST(0, #{s.likes}), GREATEST(0, #{s.favorites}), ",
+            "GREATEST(0, #{s.comments}), #{s.lastActivityAt}, 0)",
+            "</foreach>",
+            " ON DUPLICATE KEY UPDATE ",
+            "author_name = IF(VALUES(author_name) = '', author_name, VALUES(author_name)), ",
+            "views = IF(VALUES(last_activity_at) >= COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(views), views), ",
+            "likes = IF(VALUES(last_activity_at) >= COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(likes), likes), ",
+            "favorites = IF(VALUES(last_activity_at) >= COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(favorites), favorites), ",
+            "comments = IF(VALUES(last_activity_at) >= COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(comments), comments), ",
+            "version = version + 1, ",
+            "last_activity_at = GREATEST(COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(last_activity_at))",
+            "</script>"
+    })
+    int upsertTotalsBatch(@Param("list") List<NoteStatsDO> list);
 }
@@ -0,0 +1,28 @@
+package com.project.login.model.dataobject;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 笔记的归属上下文：所在笔记本、笔记空间、作者以及两级标签名（一次 JOIN 查出）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NoteContextDO {
+
+    private Long noteId;
+
+    private Long notebookId;
+
+    private Long spaceId;
+
+    private Long ownerId;
+
+    private String notebookTag;
+
+    private String spaceTag;
+}
@@ -21,6 +21,8 @@ public class NoteStatsCompensationDO {
 
     private String status;
     private Integer retryCount;
+    private LocalDateTime nextRetryAt;
+    private String lastError;
 
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -0,0 +1,30 @@
+package com.project.login.model.dataobject;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 笔记单日活跃度（各字段为当天的净变化量）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NoteStatsDailyDO {
+
+    private Long noteId;
+
+    private LocalDate statDate;
+
+    private Long views;
+    private Long likes;
+    private Long favorites;
+    private Long comments;
+
+    private LocalDateTime updatedAt;
+}
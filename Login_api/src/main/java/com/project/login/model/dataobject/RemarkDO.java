@@ -5,11 +5,14 @@ import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
+import java.util.Date;
 
 
 @Data
@@ -17,6 +20,12 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Document(collection="remark")
+@CompoundIndexes({
+        // 一级评论分页：note_id + is_reply 过滤，(created_time, _id) 作为游标
+        @CompoundIndex(name = "idx_note_reply_time", def = "{'note_id': 1, 'is_reply': 1, 'created_time': 1, '_id': 1}"),
+        // 楼中楼分页与回复计数
+        @CompoundIndex(name = "idx_parent_time", def = "{'parent_id': 1, 'is_reply': 1, 'created_time': 1, '_id': 1}")
+})
 public class RemarkDO {
     @Id// MongoDB 中的主键字段为 id
     private String _id; // MongoDB 文档主键，对应 id
@@ -37,6 +46,9 @@ public class RemarkDO {
     @Field("created_at") // 映射为 created_at
     private String createdAt; // 创建时间
 
+    @Field("created_time") // 日期类型的创建时间，用于排序与游标分页
+    private Date createdTime;
+
     @Field("parent_id") // 映射为 parent_id
     private String parentId; // 上一级评论（楼中楼）
 
@@ -49,5 +61,9 @@ public class RemarkDO {
     @Field("reply_to_user_name")
     private String replyToUsername;
 
+    @Field("path") // 祖先评论 ID 路径，如 "/rootId/parentId/"，一级评论为 "/"
+    @Indexed
+    private String path;
+
 
 }
@@ -12,6 +12,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * 旧版整集合点赞文档，仅用于启动时迁移到 {@link RemarkLikeRecordDO}
+ */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
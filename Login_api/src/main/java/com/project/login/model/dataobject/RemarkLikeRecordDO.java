@@ -0,0 +1,41 @@
+package com.project.login.model.dataobject;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.util.Date;
+
+/**
+ * 评论点赞记录：每个 (remarkId, userId) 一条文档
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection="remark_like_record")
+@CompoundIndexes({
+        // 点赞幂等 + 单用户点赞状态查询
+        @CompoundIndex(name = "uk_remark_user", def = "{'remark_id': 1, 'user_id': 1}", unique = true),
+        // 批量判断某用户对一页评论的点赞状态
+        @CompoundIndex(name = "idx_user_remark", def = "{'user_id': 1, 'remark_id': 1}")
+})
+public class RemarkLikeRecordDO {
+    @Id
+    private String id;
+
+    @Field("remark_id")
+    private String remarkId;
+
+    @Field("user_id")
+    private Long userId;
+
+    @Field("created_time")
+    private Date createdTime;
+}
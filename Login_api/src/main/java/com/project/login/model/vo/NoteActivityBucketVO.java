@@ -0,0 +1,20 @@
+package com.project.login.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NoteActivityBucketVO {
+    private LocalDateTime start;  // 桶的起始时间（整点或零点）
+    private Long views;
+    private Long likes;
+    private Long favorites;
+    private Long comments;
+}
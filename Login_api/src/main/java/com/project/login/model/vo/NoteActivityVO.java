@@ -0,0 +1,26 @@
+package com.project.login.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NoteActivityVO {
+    private Long noteId;
+    private String granularity;   // HOUR, DAY
+    private LocalDateTime from;   // 第一个桶的起始时间
+    private LocalDateTime to;     // 最后一个桶的结束时间
+    // 区间内的净变化量（取消点赞/收藏会抵消），浏览量只增不减
+    private Long views;
+    private Long likes;
+    private Long favorites;
+    private Long comments;
+    private List<NoteActivityBucketVO> buckets;
+}
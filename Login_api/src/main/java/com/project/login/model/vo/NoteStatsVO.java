@@ -7,6 +7,7 @@ public class NoteStatsVO {
     private Long noteId;
     private String authorName;
     private Long views;
+    private Long uniqueViewers;  // 独立访客数（HyperLogLog 估算）
     private Long likes;
     private Long favorites;
     private Long comments;
@@ -0,0 +1,23 @@
+package com.project.login.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RemarkPageVO {
+    /** 当前页评论 */
+    private List<RemarkVO> items;
+
+    /** 下一页游标，没有更多时为 null */
+    private String nextCursor;
+
+    /** 是否还有更多 */
+    private Boolean hasMore;
+}
@@ -45,6 +45,9 @@ public class RemarkVO {
     /** 子评论（仅一层） */
     private List<RemarkVO> replies;
 
+    /** 直接回复总数（分页接口中 replies 只包含前几条） */
+    private Long replyCount;
+
     /** 当前用户是否已经点赞 **/
     private Boolean LikedOrNot;
 }
@@ -0,0 +1,20 @@
+package com.project.login.repository;
+
+import com.project.login.model.dataobject.RemarkLikeRecordDO;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RemarkLikeRecordRepository extends MongoRepository<RemarkLikeRecordDO, String> {
+
+    List<RemarkLikeRecordDO> findByUserIdAndRemarkIdIn(Long userId, Collection<String> remarkIds);
+
+    long deleteByRemarkIdAndUserId(String remarkId, Long userId);
+
+    void deleteByRemarkId(String remarkId);
+
+    void deleteByRemarkIdIn(Collection<String> remarkIds);
+}
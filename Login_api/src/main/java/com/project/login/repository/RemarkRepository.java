@@ -14,6 +14,9 @@ public interface RemarkRepository extends MongoRepository<RemarkDO, String> {
     @Query("{'noteId': ?0, 'isReply': false}")
     List<RemarkDO> findRemarksByNoteIdAndIsReplyFalse(Long noteId);
 
+    @Query("{'noteId': ?0}")
+    List<RemarkDO> findRemarksByNoteId(Long noteId);
+
     @Query("{'parentId': ?0, 'isReply': true}")
     List<RemarkDO> findRemarksByParentIdAndIsReplyTrue(String parentId);
     List<RemarkDO> findByUserId(Long userId);
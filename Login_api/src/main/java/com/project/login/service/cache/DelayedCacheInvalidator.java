@@ -0,0 +1,218 @@
+package com.project.login.service.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延时双删的统一调度器（单线程哈希时间轮）
+ * 1. 所有 cache-aside 写路径把"第二次删除"交给这里，不再为每次写操作新建线程
+ * 2. 同一个 key 在延时窗口内重复提交只保留一份，截止时间取最晚的一次
+ * 3. 每个 tick 把到期的 key 合并成批量 DEL 发送
+ * 入轮与 tick 推进、取出槽位在同一把锁内，新 key 不会落进本轮已经取空的槽位而多等一整圈
+ */
+@Slf4j
+@Component
+public class DelayedCacheInvalidator {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Value("${cache.invalidation.tick-ms:10}")
+    private long tickMs;
+
+    @Value("${cache.invalidation.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${cache.invalidation.delete-batch-size:500}")
+    private int deleteBatchSize;
+
+    /** key → 最晚删除时间（毫秒），用于合并重复 key */
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private ConcurrentLinkedQueue<String>[] wheel;
+    /** 保护 lastTick 与槽位的入轮/取出 */
+    private final Object wheelLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private volatile long lastTick;
+
+    private final AtomicLong scheduledTotal = new AtomicLong();
+    private final AtomicLong coalescedTotal = new AtomicLong();
+    private final AtomicLong deletedTotal = new AtomicLong();
+    private volatile long lastLagMillis;
+
+    public DelayedCacheInvalidator(RedisTemplate<String, Object> redisTemplate,
+                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void start() {
+        wheel = new ConcurrentLinkedQueue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        lastTick = System.currentTimeMillis() / tickMs;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-invalidation-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::safeTick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+
+        meterRegistryProvider.ifAvailable(registry -> {
+            Gauge.builder("cache.invalidation.pending", pending, Map::size).register(registry);
+            Gauge.builder("cache.invalidation.lag.ms", this, DelayedCacheInvalidator::getLastLagMillis).register(registry);
+            FunctionCounter.builder("cache.invalidation.deleted", deletedTotal, AtomicLong::get).register(registry);
+            FunctionCounter.builder("cache.invalidation.coalesced", coalescedTotal, AtomicLong::get).register(registry);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        // 停机前把未到期的 key 直接删掉，避免脏缓存残留
+        List<String> rest = new ArrayList<>(pending.keySet());
+        pending.clear();
+        deleteInBatches(rest);
+    }
+
+    /**
+     * 延时删除一批 key
+     */
+    public void invalidateLater(Duration delay, String... keys) {
+        invalidateLater(delay, Arrays.asList(keys));
+    }
+
+    public void invalidateLater(Duration delay, Collection<String> keys) {
+        long deadline = System.currentTimeMillis() + Math.max(delay.toMillis(), 0L);
+        for (String key : keys) {
+            if (key == null) continue;
+            scheduledTotal.incrementAndGet();
+            boolean[] fresh = {false};
+            pending.compute(key, (k, old) -> {
+                if (old == null) {
+                    fresh[0] = true;
+                    return deadline;
+                }
+                // 已在时间轮中：只延后截止时间，到期时由 tick 重新入轮
+                return Math.max(old, deadline);
+            });
+            if (fresh[0]) {
+                synchronized (wheelLock) {
+                    wheel[bucketOf(deadline)].offer(key);
+                }
+            } else {
+                coalescedTotal.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 截止时间对应的槽位；已经转过的槽位顺延到下一个 tick，避免多等一整圈。需持有 wheelLock
+     */
+    private int bucketOf(long deadline) {
+        long tick = Math.max(deadline / tickMs, lastTick + 1);
+        return (int) Math.floorMod(tick, (long) wheelSize);
+    }
+
+    private void safeTick() {
+        try {
+            tick();
+        } catch (Exception e) {
+            log.error("延时缓存删除 tick 失败", e);
+        }
+    }
+
+    private void tick() {
+        List<String> due = new ArrayList<>();
+        synchronized (wheelLock) {
+            collectDue(due);
+        }
+        deleteInBatches(due);
+    }
+
+    private void collectDue(List<String> due) {
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMs;
+        // 追赶可能错过的 tick，但最多转一圈
+        long from = Math.max(lastTick + 1, currentTick - wheelSize + 1);
+        long maxLag = 0;
+
+        // 先推进 lastTick，使本轮重新入轮的 key 落到下一个 tick 之后
+        lastTick = currentTick;
+        for (long t = from; t <= currentTick; t++) {
+            ConcurrentLinkedQueue<String> bucket = wheel[(int) Math.floorMod(t, (long) wheelSize)];
+            int size = bucket.size();
+            for (int i = 0; i < size; i++) {
+                String key = bucket.poll();
+                if (key == null) break;
+                Long deadline = pending.get(key);
+                if (deadline == null) continue;
+                if (deadline > now) {
+                    // 截止时间被延后（或超过一圈），重新放回对应槽位
+                    wheel[bucketOf(deadline)].offer(key);
+                    continue;
+                }
+                if (pending.remove(key, deadline)) {
+                    due.add(key);
+                    maxLag = Math.max(maxLag, now - deadline);
+                } else {
+                    // 并发中被延后，重新入轮
+                    Long newer = pending.get(key);
+                    if (newer != null) wheel[bucketOf(newer)].offer(key);
+                }
+            }
+        }
+        lastLagMillis = maxLag;
+    }
+
+    private void deleteInBatches(List<String> keys) {
+        for (int i = 0; i < keys.size(); i += deleteBatchSize) {
+            List<String> batch = keys.subList(i, Math.min(i + deleteBatchSize, keys.size()));
+            try {
+                redisTemplate.delete(batch);
+                deletedTotal.addAndGet(batch.size());
+            } catch (Exception e) {
+                log.warn("批量删除缓存失败, size={}", batch.size(), e);
+            }
+        }
+    }
+
+    /** 等待删除的 key 数量 */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /** 最近一次 tick 中实际删除时间相对截止时间的最大滞后 */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getScheduledTotal() {
+        return scheduledTotal.get();
+    }
+
+    public long getCoalescedTotal() {
+        return coalescedTotal.get();
+    }
+
+    public long getDeletedTotal() {
+        return deletedTotal.get();
+    }
+}
@@ -1,31 +1,40 @@
 
 package com.project.login.service.flink;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.project.login.model.event.UserBehaviorEvent;
 import com.project.login.model.event.UserSearchEvent;
-import org.apache.flink.api.common.state.ListState;
-import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
 import org.apache.flink.util.Collector;
-import redis.clients.jedis.Jedis;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class BehaviorSearchJob {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final String REDIS_HOST = "localhost";
     private static final int REDIS_PORT = 6379;
     private static final int TOP_N = 10;
+    private static final int TOP_N_WINDOW_MINUTES = 60; // 最近 1 小时
+    private static final long TOP_N_INTERVAL_MS = 10_000L; // 每 10 秒更新一次 Top-N
+    private static final int HOT_BOARD_MAX_SIZE = 1_000; // 每个榜单保留的笔记数
+    private static final long CHECKPOINT_INTERVAL_MS = 30_000L; // Redis Sink 在 checkpoint 时写出全部缓冲，Source 在完成后确认
+    private static final String STREAM_GROUP = "behavior-search-job"; // Redis Stream 消费组，每个并行子任务一个消费者
+    private static final int STREAM_BATCH_SIZE = 500; // 每次 XREADGROUP 读取的条数
+    // Redis Sink：每批最多条数 / 最长缓冲时间 / 最多在途批次
+    private static final int SINK_BATCH_SIZE = 1_000;
+    private static final long SINK_FLUSH_MS = 1_000L;
+    private static final int SINK_MAX_IN_FLIGHT = 4;
+    // 用户兴趣画像：半衰期 / 每个用户保留的词项数 / 低于该得分的词项淘汰 / 合并写出的延迟 / Redis 过期时间
+    private static final long PROFILE_HALF_LIFE_MS = 7 * 24 * 3_600_000L;
+    private static final int PROFILE_MAX_TERMS = 200;
+    private static final double PROFILE_MIN_SCORE = 0.05;
+    private static final long PROFILE_FLUSH_DELAY_MS = 5_000L;
+    private static final long PROFILE_TTL_SECONDS = 30 * 24 * 3_600L;
 
     public static void main(String[] args) throws Exception {
 
@@ -40,10 +49,11 @@ public class BehaviorSearchJob {
 
         StreamExecutionEnvironment env =
                 StreamExecutionEnvironment.createLocalEnvironment(slotNum, conf);
+        env.enableCheckpointing(CHECKPOINT_INTERVAL_MS);
 
         // -------------------- 用户行为流 --------------------
         var behaviorStream = env
-                .addSource(new RedisStreamSource(REDIS_HOST, "user_behavior_stream"))
+                .addSource(new RedisStreamSource(REDIS_HOST, "user_behavior_stream", STREAM_GROUP, STREAM_BATCH_SIZE))
                 .map(map -> new UserBehaviorEvent(
                         Long.valueOf(map.get("user_id")),
                         Long.valueOf(map.get("target_id")),
@@ -63,7 +73,7 @@ public class BehaviorSearchJob {
 
         // -------------------- 用户搜索流 --------------------
         var searchStream = env
-                .addSource(new RedisStreamSource(REDIS_HOST, "user_search_stream"))
+                .addSource(new RedisStreamSource(REDIS_HOST, "user_search_stream", STREAM_GROUP, STREAM_BATCH_SIZE))
                 .map(map -> new UserSearchEvent(
                         Long.valueOf(map.get("user_id")),
                         map.get("keyword"),
@@ -78,68 +88,50 @@ public class BehaviorSearchJob {
         behaviorStream
                 .keyBy(tuple -> tuple.f0)
                 .connect(searchStream.keyBy(tuple -> tuple.f0))
-                .process(new UserProfileFusionFunction())
-                .map(fused -> "FusedProfile: " + fused)
-                .print();
+                .process(new UserProfileFusionFunction(PROFILE_HALF_LIFE_MS, PROFILE_MAX_TERMS,
+                        PROFILE_MIN_SCORE, PROFILE_FLUSH_DELAY_MS))
+                .returns(TypeInformation.of(new TypeHint<Tuple2<Long, Map<String, Double>>>() {}))
+                // 同一用户的画像在一个批次内只写最后一次
+                .addSink(new PipelinedRedisSink<>(REDIS_HOST, REDIS_PORT,
+                        SINK_BATCH_SIZE, SINK_FLUSH_MS, SINK_MAX_IN_FLIGHT, new UserProfileWriter(PROFILE_TTL_SECONDS))
+                        .coalesceBy(profile -> String.valueOf(profile.f0), null))
+                .name("fused-profile-sink");
 
         // -------------------- Top-N 热点计算 --------------------
+        // 两阶段：按 noteId 维护分钟桶得分 → 按分片选出局部 Top-K → 全局合并，状态与每周期开销只与活跃笔记数有关
+        // 每个子任务一个分片：分片 key 按 key group 分配预先选好，避免 hash 取模后多个分片挤在同一个子任务上
+        int shards = env.getParallelism();
+        int maxParallelism = env.getMaxParallelism() > 0
+                ? env.getMaxParallelism()
+                : KeyGroupRangeAssignment.computeDefaultMaxParallelism(shards);
+        int[] shardKeys = PartialTopNFunction.shardKeys(shards, maxParallelism);
         topNStream
-                // 不按 noteId keyBy，而是使用全局 key（所有事件合并计算 Top-N）
-                .keyBy(e -> 0) // 所有事件在同一个 key 上
-                .process(new KeyedProcessFunction<Integer, UserBehaviorEvent, Void>() {
-
-                    private ListState<UserBehaviorEvent> state;
-
-                    @Override
-                    public void open(org.apache.flink.configuration.Configuration parameters) {
-                        ListStateDescriptor<UserBehaviorEvent> desc =
-                                new ListStateDescriptor<>("behaviorListState", UserBehaviorEvent.class);
-                        state = getRuntimeContext().getListState(desc);
-                    }
-
-                    @Override
-                    public void processElement(UserBehaviorEvent value, Context ctx, Collector<Void> out) throws Exception {
-                        state.add(value);
-                        // 每 10 秒更新一次 Top-N
-                        ctx.timerService().registerProcessingTimeTimer(ctx.timerService().currentProcessingTime() + 10000);
-                    }
-
-                    @Override
-                    public void onTimer(long timestamp, OnTimerContext ctx, Collector<Void> out) throws Exception {
-                        long oneHourAgo = System.currentTimeMillis() - 3600_000L; // 1小时
-
-                        List<UserBehaviorEvent> recentEvents = new ArrayList<>();
-                        for (UserBehaviorEvent e : state.get()) {
-                            if (e.timestamp() >= oneHourAgo) {
-                                recentEvents.add(e);
-                            }
-                        }
-
-                        // 更新状态，只保留最近1小时事件
-                        state.update(recentEvents);
-
-                        // 累加笔记权重
-                        Map<Long, Integer> scoreMap = recentEvents.stream()
-                                .collect(Collectors.groupingBy(UserBehaviorEvent::noteId,
-                                        Collectors.summingInt(UserBehaviorEvent::weight)));
-
-                        // Top-N
-                        List<Long> topN = scoreMap.entrySet().stream()
-                                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
-                                .limit(TOP_N)
-                                .map(Map.Entry::getKey)
-                                .collect(Collectors.toList());
-
-                        // 打印 Top-N 笔记 ID
-                        System.out.println("Writing Top-N to Redis: " + topN);
-
-                        // 写入 Redis
-                        try (Jedis jedis = new Jedis(REDIS_HOST, REDIS_PORT)) {
-                            jedis.set("hot_notes", objectMapper.writeValueAsString(topN));
-                        }
-                    }
-
-                });
+                .keyBy(UserBehaviorEvent::noteId)
+                .process(new NoteScoreWindowFunction(TOP_N_WINDOW_MINUTES, TOP_N_INTERVAL_MS))
+                .returns(TypeInformation.of(new TypeHint<Tuple2<Long, Long>>() {}))
+                .keyBy(score -> shardKeys[Math.floorMod(Long.hashCode(score.f0), shards)])
+                .process(new PartialTopNFunction(TOP_N, TOP_N_INTERVAL_MS))
+                .returns(TypeInformation.of(new TypeHint<Tuple2<Integer, List<Tuple2<Long, Long>>>>() {}))
+                .keyBy(partial -> 0)
+                .process(new GlobalTopNFunction(TOP_N, TOP_N_INTERVAL_MS))
+                .setParallelism(1)
+                .returns(TypeInformation.of(new TypeHint<List<Tuple2<Long, Long>>>() {}))
+                .addSink(new PipelinedRedisSink<>(REDIS_HOST, REDIS_PORT,
+                        1, SINK_FLUSH_MS, SINK_MAX_IN_FLIGHT, new RealtimeBoardWriter()))
+                .setParallelism(1)
+                .name("realtime-board-sink");
+
+        // -------------------- 衰减热榜 --------------------
+        // hourly / daily / weekly 三个窗口，全站 + 每个标签一个 Sorted Set，HotService 直接分页读取
+        // 同一 (榜单, 笔记) 的增量在批次内按衰减换算后合并，每批一次 pipeline
+        topNStream
+                .flatMap((UserBehaviorEvent event, Collector<HotBoardIncrement> out) ->
+                        HotBoardIncrement.of(event).forEach(out::collect))
+                .returns(HotBoardIncrement.class)
+                .addSink(new PipelinedRedisSink<>(REDIS_HOST, REDIS_PORT,
+                        SINK_BATCH_SIZE, SINK_FLUSH_MS, SINK_MAX_IN_FLIGHT, new HotBoardWriter(HOT_BOARD_MAX_SIZE))
+                        .coalesceBy(HotBoardIncrement::coalesceKey, HotBoardIncrement::merge))
+                .name("hot-board-sink");
 
         env.execute("Behavior + Search Stream with Fusion and Real-time Top-N Hot Notes");
     }
@@ -0,0 +1,73 @@
+package com.project.login.service.flink;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top-N 第三阶段：全局单 key，只保存每个分片最新的 Top-K（分片数 × K 条，按分片 key 区分），
+ * 每个周期合并一次，结果有变化时输出新的 Top-N（由 {@link RealtimeBoardWriter} 写入 realtime 榜）
+ */
+public class GlobalTopNFunction
+        extends KeyedProcessFunction<Integer, Tuple2<Integer, List<Tuple2<Long, Long>>>, List<Tuple2<Long, Long>>> {
+
+    private final int topN;
+    private final long intervalMs;
+
+    private MapState<Integer, List<Tuple2<Long, Long>>> partials;
+    private ValueState<String> lastWritten;
+
+    public GlobalTopNFunction(int topN, long intervalMs) {
+        this.topN = topN;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void open(org.apache.flink.configuration.Configuration parameters) {
+        partials = getRuntimeContext().getMapState(new MapStateDescriptor<>("shardTopK",
+                TypeInformation.of(Integer.class),
+                TypeInformation.of(new TypeHint<List<Tuple2<Long, Long>>>() {})));
+        lastWritten = getRuntimeContext().getState(new ValueStateDescriptor<>("hotNotesWritten", String.class));
+    }
+
+    @Override
+    public void processElement(Tuple2<Integer, List<Tuple2<Long, Long>>> partial, Context ctx,
+                               Collector<List<Tuple2<Long, Long>>> out) throws Exception {
+        if (partial.f1.isEmpty()) {
+            partials.remove(partial.f0);
+        } else {
+            partials.put(partial.f0, partial.f1);
+        }
+        long now = ctx.timerService().currentProcessingTime();
+        ctx.timerService().registerProcessingTimeTimer((now / intervalMs + 1) * intervalMs);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<List<Tuple2<Long, Long>>> out) throws Exception {
+        Map<Long, Long> merged = new HashMap<>();
+        for (List<Tuple2<Long, Long>> partial : partials.values()) {
+            for (Tuple2<Long, Long> score : partial) {
+                merged.put(score.f0, score.f1);
+            }
+        }
+        List<Tuple2<Long, Long>> topN = PartialTopNFunction.topK(merged.entrySet(), this.topN);
+
+        String snapshot = topN.toString();
+        if (snapshot.equals(lastWritten.value())) {
+            return;
+        }
+
+        out.collect(topN);
+        lastWritten.update(snapshot);
+    }
+}
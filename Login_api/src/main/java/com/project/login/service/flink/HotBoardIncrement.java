@@ -0,0 +1,55 @@
+package com.project.login.service.flink;
+
+import com.project.login.model.event.UserBehaviorEvent;
+import com.project.login.service.hot.HotBoardKeys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 衰减热榜的一次增量：value 是以 refMs 为基准的权重，即 t 时刻的权重 w 记为 w * 2^((t - refMs) / halfLifeMs)
+ */
+public record HotBoardIncrement(String board, String member, long halfLifeMs, long refMs, double value) {
+
+    /**
+     * 一个行为事件 → 每个窗口的全站榜和各标签榜各一条增量
+     */
+    public static List<HotBoardIncrement> of(UserBehaviorEvent event) {
+        if (event.noteId() == null || event.weight() <= 0) return List.of();
+
+        List<String> tags = new ArrayList<>();
+        tags.add(null); // 全站榜
+        if (event.tags() != null) {
+            for (String tag : event.tags().split(",")) {
+                if (!tag.isBlank()) tags.add(tag.trim());
+            }
+        }
+
+        String member = event.noteId().toString();
+        List<HotBoardIncrement> increments = new ArrayList<>(tags.size() * HotBoardKeys.DECAYED_WINDOWS.size());
+        for (Map.Entry<String, Long> window : HotBoardKeys.DECAYED_WINDOWS.entrySet()) {
+            for (String tag : tags) {
+                increments.add(new HotBoardIncrement(HotBoardKeys.keyOf(window.getKey(), tag), member,
+                        window.getValue(), event.timestamp(), event.weight()));
+            }
+        }
+        return increments;
+    }
+
+    /**
+     * 同一 (榜单, 笔记) 的两次增量合并，换算到较晚的基准上（较早的一方只会缩小，不会溢出）
+     */
+    public static HotBoardIncrement merge(HotBoardIncrement a, HotBoardIncrement b) {
+        HotBoardIncrement later = a.refMs() >= b.refMs() ? a : b;
+        HotBoardIncrement earlier = later == a ? b : a;
+        double scaled = earlier.value() * Math.pow(2, (double) (earlier.refMs() - later.refMs()) / later.halfLifeMs());
+        return new HotBoardIncrement(later.board(), later.member(), later.halfLifeMs(), later.refMs(),
+                later.value() + scaled);
+    }
+
+    /** 合并缓冲用的 key */
+    public String coalesceKey() {
+        return board + "|" + member;
+    }
+}
@@ -0,0 +1,80 @@
+package com.project.login.service.flink;
+
+import com.project.login.service.hot.HotBoardKeys;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把衰减热榜增量写入 Sorted Set（键约定见 {@link HotBoardKeys}）
+ * 脚本把增量换算到榜单自己的基准时间后 ZINCRBY，并把榜单裁剪到 maxBoardSize；
+ * 版本号在整批写完后每个榜单只加一次（见 {@link #afterBatch}），读取端的页面缓存在两次写出之间保持有效；
+ * 基准时间距今超过 REBASE_HALF_LIVES 个半衰期时，先整体缩放分数并把基准移到当前，避免分数溢出
+ */
+public class HotBoardWriter implements RedisWriter<HotBoardIncrement> {
+
+    /** 超过多少个半衰期重设基准（2^32 的放大倍数远小于 double 上限） */
+    private static final int REBASE_HALF_LIVES = 32;
+
+    /**
+     * KEYS[1] = 榜单，KEYS[2] = 基准时间 Hash
+     * ARGV = noteId, 相对增量基准的权重, 增量基准(ms), 半衰期(ms), 重设基准的间隔(ms), 榜单上限
+     */
+    private static final String INCR_LUA =
+            "local ref = tonumber(ARGV[3])\n" +
+            "local h = tonumber(ARGV[4])\n" +
+            "local landmark = tonumber(redis.call('HGET', KEYS[2], KEYS[1]))\n" +
+            "if not landmark then\n" +
+            "    landmark = ref\n" +
+            "    redis.call('HSET', KEYS[2], KEYS[1], landmark)\n" +
+            "elseif ref - landmark > tonumber(ARGV[5]) then\n" +
+            "    local factor = 2 ^ (-(ref - landmark) / h)\n" +
+            "    redis.call('ZUNIONSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', factor)\n" +
+            "    redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(0.000001')\n" +
+            "    landmark = ref\n" +
+            "    redis.call('HSET', KEYS[2], KEYS[1], landmark)\n" +
+            "end\n" +
+            "redis.call('ZINCRBY', KEYS[1], tonumber(ARGV[2]) * 2 ^ ((ref - landmark) / h), ARGV[1])\n" +
+            "local size = redis.call('ZCARD', KEYS[1])\n" +
+            "local max = tonumber(ARGV[6])\n" +
+            "if size > max then\n" +
+            "    redis.call('ZREMRANGEBYRANK', KEYS[1], 0, size - max - 1)\n" +
+            "end\n" +
+            "return 1";
+
+    private final int maxBoardSize;
+
+    private transient String sha;
+
+    public HotBoardWriter(int maxBoardSize) {
+        this.maxBoardSize = maxBoardSize;
+    }
+
+    @Override
+    public void open(Jedis jedis) {
+        sha = jedis.scriptLoad(INCR_LUA);
+    }
+
+    @Override
+    public void write(HotBoardIncrement inc, Pipeline pipeline) {
+        pipeline.evalsha(sha,
+                List.of(inc.board(), HotBoardKeys.LANDMARKS_KEY),
+                List.of(inc.member(), String.valueOf(inc.value()), String.valueOf(inc.refMs()),
+                        String.valueOf(inc.halfLifeMs()), String.valueOf(inc.halfLifeMs() * REBASE_HALF_LIVES),
+                        String.valueOf(maxBoardSize)));
+    }
+
+    @Override
+    public void afterBatch(List<HotBoardIncrement> batch, Pipeline pipeline) {
+        Set<String> boards = new LinkedHashSet<>();
+        for (HotBoardIncrement inc : batch) {
+            boards.add(inc.board());
+        }
+        for (String board : boards) {
+            pipeline.hincrBy(HotBoardKeys.VERSIONS_KEY, board, 1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.project.login.service.flink;
+
+import com.project.login.model.event.UserBehaviorEvent;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top-N 第一阶段：按 noteId keyBy，维护单篇笔记的滑动窗口得分
+ * 1. 按事件时间的分钟分桶累加权重（MapState: 分钟 → 权重），另存窗口总分，单个事件 O(1)
+ * 2. 定时器对齐到 interval 的整数倍，同一 key 同一时刻只有一个定时器
+ * 3. 定时器触发时只淘汰过期的分钟桶（最多 windowMinutes 个），得分有变化才向下游输出 (noteId, score)；
+ *    得分归零时输出 0 并清空状态，状态大小只与窗口内活跃的笔记数有关
+ */
+public class NoteScoreWindowFunction extends KeyedProcessFunction<Long, UserBehaviorEvent, Tuple2<Long, Long>> {
+
+    private static final long MINUTE_MS = 60_000L;
+
+    private final int windowMinutes;
+    private final long intervalMs;
+
+    private MapState<Long, Long> buckets;
+    private ValueState<Long> total;
+    private ValueState<Long> lastEmitted;
+
+    public NoteScoreWindowFunction(int windowMinutes, long intervalMs) {
+        this.windowMinutes = windowMinutes;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void open(org.apache.flink.configuration.Configuration parameters) {
+        buckets = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("noteScoreBuckets", Long.class, Long.class));
+        total = getRuntimeContext().getState(new ValueStateDescriptor<>("noteScoreTotal", Long.class));
+        lastEmitted = getRuntimeContext().getState(new ValueStateDescriptor<>("noteScoreEmitted", Long.class));
+    }
+
+    @Override
+    public void processElement(UserBehaviorEvent event, Context ctx, Collector<Tuple2<Long, Long>> out) throws Exception {
+        long now = ctx.timerService().currentProcessingTime();
+        long minute = event.timestamp() / MINUTE_MS;
+        if (minute < oldestMinute(now)) {
+            return; // 已在窗口之外
+        }
+
+        Long old = buckets.get(minute);
+        buckets.put(minute, (old == null ? 0L : old) + event.weight());
+        Long sum = total.value();
+        total.update((sum == null ? 0L : sum) + event.weight());
+
+        ctx.timerService().registerProcessingTimeTimer(nextTick(now));
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<Tuple2<Long, Long>> out) throws Exception {
+        long sum = total.value() == null ? 0L : total.value();
+
+        // 淘汰过期分钟桶
+        long oldest = oldestMinute(timestamp);
+        List<Long> expired = new ArrayList<>();
+        for (Long minute : buckets.keys()) {
+            if (minute < oldest) expired.add(minute);
+        }
+        for (Long minute : expired) {
+            sum -= buckets.get(minute);
+            buckets.remove(minute);
+        }
+
+        Long emitted = lastEmitted.value();
+        if (sum <= 0 || buckets.isEmpty()) {
+            if (emitted != null && emitted != 0L) {
+                out.collect(Tuple2.of(ctx.getCurrentKey(), 0L));
+            }
+            buckets.clear();
+            total.clear();
+            lastEmitted.clear();
+            return;
+        }
+
+        total.update(sum);
+        if (emitted == null || emitted != sum) {
+            out.collect(Tuple2.of(ctx.getCurrentKey(), sum));
+            lastEmitted.update(sum);
+        }
+        // 窗口内仍有数据：下一个周期继续淘汰
+        ctx.timerService().registerProcessingTimeTimer(timestamp + intervalMs);
+    }
+
+    private long oldestMinute(long now) {
+        return now / MINUTE_MS - windowMinutes + 1;
+    }
+
+    private long nextTick(long now) {
+        return (now / intervalMs + 1) * intervalMs;
+    }
+}
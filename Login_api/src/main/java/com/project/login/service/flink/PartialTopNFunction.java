@@ -0,0 +1,94 @@
+package com.project.login.service.flink;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Top-N 第二阶段：按 noteId 分片 keyBy，每个分片保存本片笔记的最新得分，
+ * 有变化时每个周期（对齐的单个定时器）用大小为 K 的小顶堆选出分片内的 Top-K 输出给全局合并
+ * 分片 key 由 {@link #shardKeys} 生成，与并行子任务一一对应，每个子任务只有一个分片
+ * 输出 (分片 key, 分片 Top-K 列表)，列表元素为 (noteId, score)
+ */
+public class PartialTopNFunction
+        extends KeyedProcessFunction<Integer, Tuple2<Long, Long>, Tuple2<Integer, List<Tuple2<Long, Long>>>> {
+
+    static final Comparator<Tuple2<Long, Long>> BY_SCORE =
+            Comparator.<Tuple2<Long, Long>>comparingLong(t -> t.f1).thenComparingLong(t -> -t.f0);
+
+    private final int topK;
+    private final long intervalMs;
+
+    private MapState<Long, Long> scores;
+
+    public PartialTopNFunction(int topK, long intervalMs) {
+        this.topK = topK;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void open(org.apache.flink.configuration.Configuration parameters) {
+        scores = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("shardNoteScores", Long.class, Long.class));
+    }
+
+    @Override
+    public void processElement(Tuple2<Long, Long> score, Context ctx,
+                               Collector<Tuple2<Integer, List<Tuple2<Long, Long>>>> out) throws Exception {
+        if (score.f1 <= 0) {
+            scores.remove(score.f0);
+        } else {
+            scores.put(score.f0, score.f1);
+        }
+        long now = ctx.timerService().currentProcessingTime();
+        ctx.timerService().registerProcessingTimeTimer((now / intervalMs + 1) * intervalMs);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx,
+                        Collector<Tuple2<Integer, List<Tuple2<Long, Long>>>> out) throws Exception {
+        out.collect(Tuple2.of(ctx.getCurrentKey(), topK(scores.entries(), topK)));
+    }
+
+    /**
+     * 为每个并行子任务找一个 key，使 shardKeys[i] 经 key group 分配后正好落在第 i 个子任务上；
+     * 直接用 0..parallelism-1 作 key 时多个分片可能落到同一个子任务上，部分子任务空闲
+     */
+    static int[] shardKeys(int parallelism, int maxParallelism) {
+        int[] keys = new int[parallelism];
+        boolean[] found = new boolean[parallelism];
+        int remaining = parallelism;
+        for (int key = 0; remaining > 0; key++) {
+            int subtask = KeyGroupRangeAssignment.assignKeyToParallelOperator(key, maxParallelism, parallelism);
+            if (!found[subtask]) {
+                found[subtask] = true;
+                keys[subtask] = key;
+                remaining--;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 小顶堆选 Top-K，按得分降序返回（得分相同时 noteId 小的在前）
+     */
+    static List<Tuple2<Long, Long>> topK(Iterable<Map.Entry<Long, Long>> entries, int k) {
+        PriorityQueue<Tuple2<Long, Long>> heap = new PriorityQueue<>(k + 1, BY_SCORE);
+        for (Map.Entry<Long, Long> e : entries) {
+            heap.offer(Tuple2.of(e.getKey(), e.getValue()));
+            if (heap.size() > k) heap.poll();
+        }
+        List<Tuple2<Long, Long>> result = new ArrayList<>(heap);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+}
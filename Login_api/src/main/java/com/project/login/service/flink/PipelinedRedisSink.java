@@ -0,0 +1,225 @@
+package com.project.login.service.flink;
+
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 通用的 Redis 批量写入 Sink
+ * 1. 每个子任务一个小连接池，不再为每条记录新建连接
+ * 2. 记录先进入本地缓冲，达到 batchSize 或距上次写出超过 flushIntervalMs 时整批作为一个 pipeline 写出；
+ *    可选按 key 合并（同一 key 只保留合并后的一条），例如覆盖写入的画像只写最后一次
+ * 3. 写出在子任务自己的 I/O 线程上异步执行，最多 maxInFlight 个批次在途，超出时阻塞上游（反压）；
+ *    单个 I/O 线程按提交顺序执行，同一 key 的写入不会乱序
+ * 4. checkpoint 时写出缓冲并等待在途批次全部完成，保证 at-least-once；异步写入失败会在下一条记录或 checkpoint 时抛出，
+ *    作业从上一个 checkpoint 恢复
+ */
+public class PipelinedRedisSink<T> extends RichSinkFunction<T> implements CheckpointedFunction {
+
+    private final String host;
+    private final int port;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxInFlight;
+    private final RedisWriter<T> writer;
+
+    private KeySelector<T, String> coalesceKey;
+    private ReduceFunction<T> coalesceReducer;
+
+    private transient JedisPool pool;
+    private transient ExecutorService ioExecutor;
+    private transient ScheduledExecutorService flushTimer;
+    private transient Semaphore inFlight;
+    private transient Object lock;
+    private transient List<T> buffer;
+    private transient Map<String, T> coalesced;
+    private transient long lastFlush;
+    private transient AtomicReference<Throwable> failure;
+
+    public PipelinedRedisSink(String host, int port, int batchSize, long flushIntervalMs, int maxInFlight,
+                              RedisWriter<T> writer) {
+        this.host = host;
+        this.port = port;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxInFlight = maxInFlight;
+        this.writer = writer;
+    }
+
+    /**
+     * 按 key 合并缓冲中的记录
+     * @param reducer 为 null 时同一 key 只保留最后一条
+     */
+    public PipelinedRedisSink<T> coalesceBy(KeySelector<T, String> key, ReduceFunction<T> reducer) {
+        this.coalesceKey = key;
+        this.coalesceReducer = reducer;
+        return this;
+    }
+
+    @Override
+    public void open(org.apache.flink.configuration.Configuration parameters) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(2); // 一个 I/O 连接 + 一个备用
+        poolConfig.setMaxIdle(2);
+        pool = new JedisPool(poolConfig, host, port);
+        try (Jedis jedis = pool.getResource()) {
+            writer.open(jedis);
+        }
+
+        String name = getRuntimeContext().getTaskName() + "-" + getRuntimeContext().getIndexOfThisSubtask();
+        ioExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "redis-sink-io-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redis-sink-flush-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        inFlight = new Semaphore(maxInFlight);
+        lock = new Object();
+        buffer = new ArrayList<>();
+        coalesced = new LinkedHashMap<>();
+        failure = new AtomicReference<>();
+        lastFlush = System.currentTimeMillis();
+
+        flushTimer.scheduleWithFixedDelay(this::flushIfDue, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void invoke(T value, Context context) throws Exception {
+        checkFailure();
+        boolean full;
+        synchronized (lock) {
+            if (coalesceKey != null) {
+                String key = coalesceKey.getKey(value);
+                T previous = coalesced.get(key);
+                coalesced.put(key, previous == null || coalesceReducer == null
+                        ? value : coalesceReducer.reduce(previous, value));
+                full = coalesced.size() >= batchSize;
+            } else {
+                buffer.add(value);
+                full = buffer.size() >= batchSize;
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        flush();
+        awaitInFlight();
+        checkFailure();
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) {
+        // 缓冲在 checkpoint 时已全部写出，无需保存状态
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            if (flushTimer != null) flushTimer.shutdownNow();
+            if (lock != null) {
+                flush();
+                awaitInFlight();
+            }
+        } finally {
+            if (ioExecutor != null) ioExecutor.shutdown();
+            if (pool != null) pool.close();
+        }
+        checkFailure();
+    }
+
+    private void flushIfDue() {
+        try {
+            if (System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * 取出当前缓冲并提交给 I/O 线程；持锁提交，保证批次按取出顺序执行
+     */
+    private void flush() throws InterruptedException {
+        synchronized (lock) {
+            lastFlush = System.currentTimeMillis();
+            List<T> batch;
+            if (coalesceKey != null) {
+                if (coalesced.isEmpty()) return;
+                batch = new ArrayList<>(coalesced.values());
+                coalesced = new LinkedHashMap<>();
+            } else {
+                if (buffer.isEmpty()) return;
+                batch = buffer;
+                buffer = new ArrayList<>();
+            }
+
+            inFlight.acquire();
+            try {
+                ioExecutor.execute(() -> {
+                    try {
+                        write(batch);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+    }
+
+    private void write(List<T> batch) {
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (T value : batch) {
+                writer.write(value, pipeline);
+            }
+            writer.afterBatch(batch, pipeline);
+            for (Object result : pipeline.syncAndReturnAll()) {
+                if (result instanceof Exception e) {
+                    throw new IllegalStateException("Redis pipeline 写入失败", e);
+                }
+            }
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    private void checkFailure() throws Exception {
+        Throwable e = failure.get();
+        if (e == null) return;
+        if (e instanceof Exception ex) throw ex;
+        throw new RuntimeException(e);
+    }
+}
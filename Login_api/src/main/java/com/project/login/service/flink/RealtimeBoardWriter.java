@@ -0,0 +1,36 @@
+package com.project.login.service.flink;
+
+import com.project.login.service.hot.HotBoardKeys;
+import org.apache.flink.api.java.tuple.Tuple2;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用一次 Top-N 结果整体替换 realtime 榜：DEL + ZADD + 版本号加一在同一个脚本内，读取端不会看到空榜
+ */
+public class RealtimeBoardWriter implements RedisWriter<List<Tuple2<Long, Long>>> {
+
+    /**
+     * KEYS[1] = realtime 榜，KEYS[2] = 版本号 Hash；ARGV = score1, member1, score2, member2, ...
+     */
+    private static final String REPLACE_LUA =
+            "redis.call('DEL', KEYS[1])\n" +
+            "if #ARGV > 0 then\n" +
+            "    redis.call('ZADD', KEYS[1], unpack(ARGV))\n" +
+            "end\n" +
+            "redis.call('HINCRBY', KEYS[2], KEYS[1], 1)\n" +
+            "return 1";
+
+    @Override
+    public void write(List<Tuple2<Long, Long>> topN, Pipeline pipeline) {
+        List<String> args = new ArrayList<>(topN.size() * 2);
+        for (Tuple2<Long, Long> score : topN) {
+            args.add(String.valueOf(score.f1));
+            args.add(String.valueOf(score.f0));
+        }
+        String key = HotBoardKeys.keyOf(HotBoardKeys.REALTIME, null);
+        pipeline.eval(REPLACE_LUA, List.of(key, HotBoardKeys.VERSIONS_KEY), args);
+    }
+}
@@ -1,45 +1,124 @@
 package com.project.login.service.flink;
 
-import org.apache.flink.streaming.api.functions.source.SourceFunction;
+import org.apache.flink.api.common.state.CheckpointListener;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
 import redis.clients.jedis.*;
-import redis.clients.jedis.params.XReadParams;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XReadGroupParams;
 import redis.clients.jedis.resps.StreamEntry;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-public class RedisStreamSource implements SourceFunction<Map<String, String>> {
+/**
+ * 基于消费组的 Redis Stream Source
+ * 1. 每个并行子任务是消费组中的一个消费者（{group}-{子任务号}），每次 XREADGROUP 读取 batchSize 条，吞吐随并行度扩展
+ * 2. 已发出但未确认的 id 与最后确认的 id 随 checkpoint 保存；checkpoint 完成后才 XACK，作业失败时未确认的条目留在 PEL 中
+ * 3. 启动时先重放本消费者 PEL 中的条目（上次 checkpoint 之后发出的），再读新条目；从 checkpoint 恢复时，
+ *    状态中的 id 已包含在恢复的下游状态里，直接确认
+ * 4. 定期用 XAUTOCLAIM 接管空闲超过 claimIdleMs 的条目（例如缩容后不再存在的消费者留下的）
+ * 投递语义为 at-least-once
+ */
+public class RedisStreamSource extends RichParallelSourceFunction<Map<String, String>>
+        implements CheckpointedFunction, CheckpointListener {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long BLOCK_MS = 1000L;
+    private static final long DEFAULT_CLAIM_IDLE_MS = 300_000L;
 
     private volatile boolean running = true;
     private final String host;
     private final String streamKey;
-    private StreamEntryID lastId;
+    private final String group;
+    private final int batchSize;
+    private final long claimIdleMs;
+
+    private transient String consumer;
+    private transient Jedis jedis;
+    /** 上次 checkpoint 之后发出的 id */
+    private transient List<String> emitted;
+    /** checkpointId → 该 checkpoint 之前发出、等待确认的 id */
+    private transient TreeMap<Long, List<String>> pendingAcks;
+    /** checkpoint 完成后待确认的 id，由读取线程执行 XACK（Jedis 连接不跨线程使用） */
+    private transient ConcurrentLinkedQueue<String> toAck;
+    private transient volatile String lastAckedId;
+    private transient ListState<String> pendingAckState;
+    private transient ListState<String> lastAckedState;
+    private transient List<String> restoredPending;
 
     public RedisStreamSource(String host, String streamKey) {
+        this(host, streamKey, "flink-" + streamKey, DEFAULT_BATCH_SIZE);
+    }
+
+    public RedisStreamSource(String host, String streamKey, String group, int batchSize) {
         this.host = host;
         this.streamKey = streamKey;
-        this.lastId = StreamEntryID.LAST_ENTRY; // 只读新消息
+        this.group = group;
+        this.batchSize = batchSize;
+        this.claimIdleMs = DEFAULT_CLAIM_IDLE_MS;
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        pendingAckState = context.getOperatorStateStore()
+                .getListState(new ListStateDescriptor<>("redisStreamPendingAcks", String.class));
+        lastAckedState = context.getOperatorStateStore()
+                .getListState(new ListStateDescriptor<>("redisStreamLastAcked", String.class));
+
+        emitted = new ArrayList<>();
+        pendingAcks = new TreeMap<>();
+        toAck = new ConcurrentLinkedQueue<>();
+        restoredPending = new ArrayList<>();
+        if (context.isRestored()) {
+            pendingAckState.get().forEach(restoredPending::add);
+            for (String id : lastAckedState.get()) {
+                if (lastAckedId == null || compareIds(id, lastAckedId) > 0) lastAckedId = id;
+            }
+        }
+    }
+
+    @Override
+    public void open(org.apache.flink.configuration.Configuration parameters) {
+        consumer = group + "-" + getRuntimeContext().getIndexOfThisSubtask();
+        jedis = new Jedis(host, 6379);
+        try {
+            jedis.xgroupCreate(streamKey, group, StreamEntryID.LAST_ENTRY, true);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) throw e;
+        }
+        // 恢复的 id 已随 checkpoint 生效，直接确认，避免重放
+        if (!restoredPending.isEmpty()) {
+            ack(restoredPending);
+            restoredPending.clear();
+        }
     }
 
     @Override
     public void run(SourceContext<Map<String, String>> ctx) throws Exception {
-        try (Jedis jedis = new Jedis(host, 6379)) {
-
-            while (running) {
-                List<Map.Entry<String, List<StreamEntry>>> res =
-                        jedis.xread(
-                                XReadParams.xReadParams().block(0).count(1),
-                                Map.of(streamKey, lastId)
-                        );
-
-                if (res != null) {
-                    for (Map.Entry<String, List<StreamEntry>> stream : res) {
-                        for (StreamEntry entry : stream.getValue()) {
-                            ctx.collect(entry.getFields());
-                            lastId = entry.getID();
-                        }
-                    }
-                }
+        // 1. 重放本消费者 PEL 中的条目
+        StreamEntryID pendingFrom = new StreamEntryID();
+        while (running) {
+            List<StreamEntry> entries = read(pendingFrom, null);
+            if (entries.isEmpty()) break;
+            emit(ctx, entries);
+            pendingFrom = entries.get(entries.size() - 1).getID();
+        }
+
+        // 2. 读取新条目，定期接管空闲条目
+        long lastClaim = System.currentTimeMillis();
+        while (running) {
+            emit(ctx, read(StreamEntryID.UNRECEIVED_ENTRY, BLOCK_MS));
+            drainAcks();
+
+            if (System.currentTimeMillis() - lastClaim >= claimIdleMs) {
+                lastClaim = System.currentTimeMillis();
+                claimIdle(ctx);
             }
         }
     }
@@ -48,5 +127,94 @@ public class RedisStreamSource implements SourceFunction<Map<String, String>> {
     public void cancel() {
         running = false;
     }
-}
 
+    @Override
+    public void close() throws Exception {
+        if (jedis != null) jedis.close();
+        super.close();
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        // 在 checkpoint 锁内调用，与 emit 互斥
+        if (!emitted.isEmpty()) {
+            pendingAcks.put(context.getCheckpointId(), emitted);
+            emitted = new ArrayList<>();
+        }
+        pendingAckState.clear();
+        for (List<String> ids : pendingAcks.values()) {
+            pendingAckState.addAll(ids);
+        }
+        lastAckedState.clear();
+        if (lastAckedId != null) {
+            lastAckedState.add(lastAckedId);
+        }
+    }
+
+    @Override
+    public void notifyCheckpointComplete(long checkpointId) {
+        SortedMap<Long, List<String>> completed = pendingAcks.headMap(checkpointId, true);
+        completed.values().forEach(toAck::addAll);
+        completed.clear();
+    }
+
+    private void drainAcks() {
+        if (toAck.isEmpty()) return;
+        List<String> ids = new ArrayList<>();
+        String id;
+        while ((id = toAck.poll()) != null) {
+            ids.add(id);
+        }
+        ack(ids);
+    }
+
+    private List<StreamEntry> read(StreamEntryID from, Long blockMs) {
+        XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(batchSize);
+        if (blockMs != null) params.block(blockMs.intValue());
+        List<Map.Entry<String, List<StreamEntry>>> res =
+                jedis.xreadGroup(group, consumer, params, Map.of(streamKey, from));
+        if (res == null || res.isEmpty()) return List.of();
+        List<StreamEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, List<StreamEntry>> stream : res) {
+            entries.addAll(stream.getValue());
+        }
+        return entries;
+    }
+
+    private void claimIdle(SourceContext<Map<String, String>> ctx) {
+        StreamEntryID start = new StreamEntryID();
+        do {
+            Map.Entry<StreamEntryID, List<StreamEntry>> claimed = jedis.xautoclaim(streamKey, group, consumer,
+                    claimIdleMs, start, XAutoClaimParams.xAutoClaimParams().count(batchSize));
+            emit(ctx, claimed.getValue());
+            start = claimed.getKey();
+        } while (running && start != null && !"0-0".equals(start.toString()));
+    }
+
+    private void emit(SourceContext<Map<String, String>> ctx, List<StreamEntry> entries) {
+        if (entries.isEmpty()) return;
+        synchronized (ctx.getCheckpointLock()) {
+            for (StreamEntry entry : entries) {
+                // PEL 中已被删除的条目字段为空，只需确认
+                if (entry.getFields() != null) {
+                    ctx.collect(entry.getFields());
+                }
+                emitted.add(entry.getID().toString());
+            }
+        }
+    }
+
+    private void ack(List<String> ids) {
+        StreamEntryID[] entryIds = ids.stream().map(StreamEntryID::new).toArray(StreamEntryID[]::new);
+        for (int i = 0; i < entryIds.length; i += batchSize) {
+            jedis.xack(streamKey, group, Arrays.copyOfRange(entryIds, i, Math.min(i + batchSize, entryIds.length)));
+        }
+        for (String id : ids) {
+            if (lastAckedId == null || compareIds(id, lastAckedId) > 0) lastAckedId = id;
+        }
+    }
+
+    private static int compareIds(String a, String b) {
+        return new StreamEntryID(a).compareTo(new StreamEntryID(b));
+    }
+}
@@ -0,0 +1,31 @@
+package com.project.login.service.flink;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * {@link PipelinedRedisSink} 中把一条记录转换成 Redis 命令的方式
+ */
+@FunctionalInterface
+public interface RedisWriter<T> extends Serializable {
+
+    /**
+     * 子任务启动时调用一次，可用于 SCRIPT LOAD 等准备工作
+     */
+    default void open(Jedis jedis) {
+    }
+
+    /**
+     * 把一条记录追加到当前批次的 pipeline 中
+     */
+    void write(T value, Pipeline pipeline);
+
+    /**
+     * 一个批次的记录全部追加后调用，可追加每批只需执行一次的命令（例如按榜单递增版本号）
+     */
+    default void afterBatch(List<T> batch, Pipeline pipeline) {
+    }
+}
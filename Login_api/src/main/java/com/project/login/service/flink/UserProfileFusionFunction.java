@@ -1,62 +1,79 @@
 package com.project.login.service.flink;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.project.login.model.event.UserBehaviorEvent;
 import com.project.login.model.event.UserSearchEvent;
 import org.apache.flink.api.common.state.MapState;
 import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
 import org.apache.flink.streaming.api.functions.co.KeyedCoProcessFunction;
 import org.apache.flink.util.Collector;
 import org.apache.flink.api.java.tuple.Tuple2;
-import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
+import java.util.PriorityQueue;
+
+/**
+ * 用户兴趣画像：行为标签与搜索关键词融合成一个按时间衰减的词项得分
+ * 1. 每个事件只更新一个词项（MapState: 词项 → 以 landmark 为基准的得分），单个事件 O(1)；
+ *    t 时刻的权重 w 记为 w * 2^((t - landmark) / halfLifeMs)，基准相差超过 32 个半衰期时整体换算到新基准
+ * 2. 画像有变化时注册一个 flushDelayMs 后的处理时间定时器，期间同一用户的事件只触发一次写出
+ * 3. 写出时按当前时间换算成实际得分，去掉低于 minScore 的词项，超过 maxTerms 时只保留得分最高的，
+ *    输出 (userId, 词项 → 得分)，由 {@link UserProfileWriter} 整体替换 Redis 中的 Sorted Set
+ * 4. 每次写出后按最高得分算出它衰减到 minScore 以下的时刻，注册一个清理定时器（有新的写出时重新注册）；
+ *    用户一直没有新事件时，定时器触发的那次写出会淘汰全部词项并清空该用户的状态
+ */
 public class UserProfileFusionFunction
         extends KeyedCoProcessFunction<Long,
         Tuple2<Long, UserBehaviorEvent>,
         Tuple2<Long, UserSearchEvent>,
-        String> {
-
-    private MapState<String, Integer> behaviorProfile;
-    private MapState<String, Integer> searchProfile;
-
-    // Redis 配置
-    private final String redisHost = "localhost";
-    private final int redisPort = 6379;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+        Tuple2<Long, Map<String, Double>>> {
+
+    private static final double SEARCH_WEIGHT = 0.6;
+    private static final double BEHAVIOR_WEIGHT = 0.4;
+    private static final double MAX_REBASE_HALF_LIVES = 32;
+
+    private final long halfLifeMs;
+    private final int maxTerms;
+    private final double minScore;
+    private final long flushDelayMs;
+
+    private MapState<String, Double> terms;
+    private ValueState<Long> landmark;
+    private ValueState<Long> flushAt;
+    private ValueState<Long> cleanupAt;
+
+    public UserProfileFusionFunction(long halfLifeMs, int maxTerms, double minScore, long flushDelayMs) {
+        this.halfLifeMs = halfLifeMs;
+        this.maxTerms = maxTerms;
+        this.minScore = minScore;
+        this.flushDelayMs = flushDelayMs;
+    }
 
     @Override
     public void open(org.apache.flink.configuration.Configuration parameters) {
-        MapStateDescriptor<String, Integer> behaviorDesc =
-                new MapStateDescriptor<>("behaviorProfile", String.class, Integer.class);
-        MapStateDescriptor<String, Integer> searchDesc =
-                new MapStateDescriptor<>("searchProfile", String.class, Integer.class);
-
-        behaviorProfile = getRuntimeContext().getMapState(behaviorDesc);
-        searchProfile = getRuntimeContext().getMapState(searchDesc);
+        terms = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("userProfileTerms", String.class, Double.class));
+        landmark = getRuntimeContext().getState(new ValueStateDescriptor<>("userProfileLandmark", Long.class));
+        flushAt = getRuntimeContext().getState(new ValueStateDescriptor<>("userProfileFlushAt", Long.class));
+        cleanupAt = getRuntimeContext().getState(new ValueStateDescriptor<>("userProfileCleanupAt", Long.class));
     }
 
     @Override
     public void processElement1(
             Tuple2<Long, UserBehaviorEvent> tuple,
             Context ctx,
-            Collector<String> out) throws Exception {
+            Collector<Tuple2<Long, Map<String, Double>>> out) throws Exception {
 
         UserBehaviorEvent event = tuple.f1;
+        if (event.weight() <= 0) return;
 
         // 不拆 tags，直接作为一个字符串
-        String tag = event.tags();
-        Integer oldValue = behaviorProfile.get(tag);
-        if (oldValue == null) oldValue = 0;
-        behaviorProfile.put(tag, oldValue + event.weight());
-
-        Map<String, Double> fused = fuseProfile();
-        writeToRedis(ctx.getCurrentKey(), fused);
-
-        out.collect("Updated fused profile for user " + ctx.getCurrentKey());
+        add(event.tags(), event.weight() * BEHAVIOR_WEIGHT, event.timestamp(), ctx);
     }
 
 
@@ -64,45 +81,109 @@ public class UserProfileFusionFunction
     public void processElement2(
             Tuple2<Long, UserSearchEvent> tuple,
             Context ctx,
-            Collector<String> out) throws Exception {
+            Collector<Tuple2<Long, Map<String, Double>>> out) throws Exception {
 
         UserSearchEvent event = tuple.f1;
+        add(event.keyword(), SEARCH_WEIGHT, event.timestamp(), ctx);
+    }
 
-        Integer oldCount = searchProfile.get(event.keyword());
-        if (oldCount == null) oldCount = 0;
-        searchProfile.put(event.keyword(), oldCount + 1);
-
-        Map<String, Double> fused = fuseProfile();
-        writeToRedis(ctx.getCurrentKey(), fused);
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx,
+                        Collector<Tuple2<Long, Map<String, Double>>> out) throws Exception {
+        // 写出定时器与清理定时器走同一段逻辑，只清掉触发的那一个
+        if (Long.valueOf(timestamp).equals(flushAt.value())) {
+            flushAt.clear();
+        }
+        if (Long.valueOf(timestamp).equals(cleanupAt.value())) {
+            cleanupAt.clear();
+        }
+        Long base = landmark.value();
+        if (base == null) return;
+
+        // 换算成当前得分，同时淘汰低分词项
+        double scale = Math.pow(2, (double) (base - timestamp) / halfLifeMs);
+        Map<String, Double> scores = new HashMap<>();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Double> term : terms.entries()) {
+            double score = term.getValue() * scale;
+            if (score < minScore) {
+                expired.add(term.getKey());
+            } else {
+                scores.put(term.getKey(), score);
+            }
+        }
+        if (scores.size() > maxTerms) {
+            PriorityQueue<Map.Entry<String, Double>> lowest = new PriorityQueue<>(Map.Entry.comparingByValue());
+            lowest.addAll(scores.entrySet());
+            while (lowest.size() > maxTerms) {
+                String term = lowest.poll().getKey();
+                scores.remove(term);
+                expired.add(term);
+            }
+        }
+        for (String term : expired) {
+            terms.remove(term);
+        }
 
-        out.collect("Updated fused profile for user " + ctx.getCurrentKey());
+        if (scores.isEmpty()) {
+            terms.clear();
+            landmark.clear();
+            deleteCleanupTimer(ctx);
+        } else {
+            scheduleCleanup(Collections.max(scores.values()), timestamp, ctx);
+        }
+        out.collect(Tuple2.of(ctx.getCurrentKey(), scores));
     }
 
-    // 融合行为画像和搜索画像
-    private Map<String, Double> fuseProfile() throws Exception {
-        Map<String, Double> fused = new HashMap<>();
+    // 最高得分衰减到 minScore 以下时全部词项都会被淘汰，届时触发一次写出来清空状态
+    private void scheduleCleanup(double topScore, long now, OnTimerContext ctx) throws Exception {
+        long delay = (long) Math.ceil(halfLifeMs * Math.log(topScore / minScore) / Math.log(2)) + 1;
+        long at = now + Math.max(delay, 1L);
+        if (Long.valueOf(at).equals(cleanupAt.value())) return;
+        deleteCleanupTimer(ctx);
+        ctx.timerService().registerProcessingTimeTimer(at);
+        cleanupAt.update(at);
+    }
 
-        double wSearch = 0.6;
-        for (String key : searchProfile.keys()) {
-            fused.put(key, searchProfile.get(key) * wSearch);
+    private void deleteCleanupTimer(OnTimerContext ctx) throws Exception {
+        Long at = cleanupAt.value();
+        if (at != null) {
+            ctx.timerService().deleteProcessingTimeTimer(at);
+            cleanupAt.clear();
         }
+    }
+
+    // 累加一个词项，并安排一次合并写出
+    private void add(String term, double weight, long eventTime, Context ctx) throws Exception {
+        if (term == null || term.isBlank()) return;
 
-        double wBehavior = 0.4;
-        for (String key : behaviorProfile.keys()) {
-            fused.merge(key, behaviorProfile.get(key) * wBehavior, Double::sum);
+        Long base = landmark.value();
+        if (base == null) {
+            base = eventTime;
+            landmark.update(base);
+        } else if ((double) (eventTime - base) / halfLifeMs > MAX_REBASE_HALF_LIVES) {
+            base = rebase(base, eventTime);
         }
 
-        return fused;
+        double value = weight * Math.pow(2, (double) (eventTime - base) / halfLifeMs);
+        Double old = terms.get(term);
+        terms.put(term, old == null ? value : old + value);
+
+        if (flushAt.value() == null) {
+            long at = ctx.timerService().currentProcessingTime() + flushDelayMs;
+            ctx.timerService().registerProcessingTimeTimer(at);
+            flushAt.update(at);
+        }
     }
 
-    // 写入 Redis
-    private void writeToRedis(Long userId, Map<String, Double> fused) {
-        try (Jedis jedis = new Jedis(redisHost, redisPort)) {
-            String key = "user_fused_profile:" + userId;
-            jedis.set(key, objectMapper.writeValueAsString(fused));
-        } catch (Exception e) {
-            e.printStackTrace();
+    // 把全部得分换算到新的基准上，避免 2^x 溢出
+    private long rebase(long base, long newBase) throws Exception {
+        double scale = Math.pow(2, (double) (base - newBase) / halfLifeMs);
+        for (Map.Entry<String, Double> term : terms.entries()) {
+            term.setValue(term.getValue() * scale);
         }
+        landmark.update(newBase);
+        return newBase;
     }
 
 }
@@ -0,0 +1,44 @@
+package com.project.login.service.flink;
+
+import org.apache.flink.api.java.tuple.Tuple2;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用一次画像快照整体替换用户兴趣 Sorted Set：DEL + ZADD + EXPIRE 在同一个脚本内，读取端不会看到空画像
+ */
+public class UserProfileWriter implements RedisWriter<Tuple2<Long, Map<String, Double>>> {
+
+    public static final String KEY_PREFIX = "user_interest_profile:";
+
+    /**
+     * KEYS[1] = 画像 key；ARGV[1] = 过期秒数，ARGV[2..] = score1, term1, score2, term2, ...
+     */
+    private static final String REPLACE_LUA =
+            "redis.call('DEL', KEYS[1])\n" +
+            "if #ARGV > 1 then\n" +
+            "    redis.call('ZADD', KEYS[1], unpack(ARGV, 2))\n" +
+            "    redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "end\n" +
+            "return 1";
+
+    private final long ttlSeconds;
+
+    public UserProfileWriter(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    public void write(Tuple2<Long, Map<String, Double>> profile, Pipeline pipeline) {
+        List<String> args = new ArrayList<>(profile.f1.size() * 2 + 1);
+        args.add(String.valueOf(ttlSeconds));
+        for (Map.Entry<String, Double> term : profile.f1.entrySet()) {
+            args.add(String.valueOf(term.getValue()));
+            args.add(term.getKey());
+        }
+        pipeline.eval(REPLACE_LUA, List.of(KEY_PREFIX + profile.f0), args);
+    }
+}
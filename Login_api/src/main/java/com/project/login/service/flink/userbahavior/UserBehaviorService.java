@@ -1,10 +1,8 @@
 package com.project.login.service.flink.userbahavior;
 
-import com.project.login.mapper.NoteMapper;
-import com.project.login.mapper.NoteSpaceMapper;
-import com.project.login.mapper.NotebookMapper;
-import com.project.login.mapper.TagMapper;
+import com.project.login.model.dataobject.NoteContextDO;
 import com.project.login.model.dto.userbehavior.UserBehaviorDTO;
+import com.project.login.service.noting.NoteContextCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -22,10 +20,7 @@ import java.util.stream.Stream;
 public class UserBehaviorService {
 
     private final StringRedisTemplate redisTemplate;
-    private final NoteMapper noteMapper;
-    private final NotebookMapper notebookMapper;
-    private final NoteSpaceMapper notespaceMapper;
-    private final TagMapper tagMapper;
+    private final NoteContextCache noteContextCache;
 
     private static final String STREAM_KEY = "user_behavior_stream";
 
@@ -40,29 +35,14 @@ public class UserBehaviorService {
                 ? dto.getTimestamp()
                 : System.currentTimeMillis();
 
-        // 1. 查 notebookId
-        Long notebookId = noteMapper.selectNotebookIdByNoteId(dto.getTargetId());
-        if (notebookId == null) {
-            log.warn("No notebook found for noteId={}, skip behavior", dto.getTargetId());
+        // 笔记 → 笔记本 → 空间 → 标签名，命中缓存时不查库，未命中时一次 JOIN
+        NoteContextDO context = noteContextCache.get(dto.getTargetId());
+        if (context == null) {
+            log.warn("No note context found for noteId={}, skip behavior", dto.getTargetId());
             return;
         }
 
-        // 2. 查 spaceId
-        Long spaceId = notebookMapper.selectSpaceIdByNotebookId(notebookId);
-        if (spaceId == null) {
-            log.warn("No space found for notebookId={}, skip behavior", notebookId);
-            return;
-        }
-
-        // 3. 查 tagId
-        Long tagIdNotebook = notebookMapper.selectNotebookTagIdByNotebookId(notebookId);
-        Long tagIdSpace = notespaceMapper.selectSpaceTagIdBySpaceId(spaceId);
-
-        // 4. 查 tag 名
-        String tagOfNotebook = (tagIdNotebook != null) ? tagMapper.selectNameById(tagIdNotebook) : null;
-        String tagOfSpace = (tagIdSpace != null) ? tagMapper.selectNameById(tagIdSpace) : null;
-
-        List<String> tags = Stream.of(tagOfNotebook, tagOfSpace)
+        List<String> tags = Stream.of(context.getNotebookTag(), context.getSpaceTag())
                 .filter(Objects::nonNull)
                 .toList();
 
@@ -83,7 +63,6 @@ public class UserBehaviorService {
 
         // 额外提供给推荐系统的关键字段
         String tag = String.join(",", tags);
-        System.out.println(tag);
         map.put("tags", tag);     // 用户兴趣特征
         map.put("weight", String.valueOf(weight));   // 行为强度
 
@@ -0,0 +1,52 @@
+package com.project.login.service.hot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热榜 Sorted Set 的 key 约定（Flink 写入端与 HotService 读取端共用）
+ * 1. hot:{window}：全站榜；hot:tag:{tag}:{window}：按标签的分榜
+ * 2. hourly / daily / weekly 为指数衰减榜，分数按各自半衰期随时间衰减，
+ *    采用前向衰减：写入时乘以 2^((t - 基准时间) / 半衰期)，排序与基准时间无关，读取时无需重算
+ * 3. realtime 为最近一小时滑动窗口的精确 Top-N（分数为窗口内权重和）
+ */
+public final class HotBoardKeys {
+
+    public static final String REALTIME = "realtime";
+    public static final String DEFAULT_WINDOW = "hourly";
+
+    /** 衰减榜窗口 → 半衰期（毫秒） */
+    public static final Map<String, Long> DECAYED_WINDOWS = new LinkedHashMap<>();
+    static {
+        DECAYED_WINDOWS.put("hourly", TimeUnit.HOURS.toMillis(1));
+        DECAYED_WINDOWS.put("daily", TimeUnit.DAYS.toMillis(1));
+        DECAYED_WINDOWS.put("weekly", TimeUnit.DAYS.toMillis(7));
+    }
+
+    /** 各衰减榜的基准时间（Hash：榜单 key → 基准时间毫秒） */
+    public static final String LANDMARKS_KEY = "hot:landmarks";
+
+    /** 各榜单的版本号（Hash：榜单 key → 写入批次数），写入端每批更新榜单后自增一次，读取端据此判断缓存是否过期 */
+    public static final String VERSIONS_KEY = "hot:versions";
+
+    private static final String KEY_PREFIX = "hot:";
+    private static final String TAG_KEY_PREFIX = "hot:tag:";
+
+    private HotBoardKeys() {
+    }
+
+    public static boolean isValidWindow(String window) {
+        return REALTIME.equals(window) || DECAYED_WINDOWS.containsKey(window);
+    }
+
+    /**
+     * @param tag 为空时返回全站榜
+     */
+    public static String keyOf(String window, String tag) {
+        if (tag == null || tag.isBlank()) {
+            return KEY_PREFIX + window;
+        }
+        return TAG_KEY_PREFIX + tag.trim() + ":" + window;
+    }
+}
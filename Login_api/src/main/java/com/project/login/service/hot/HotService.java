@@ -1,63 +1,143 @@
 package com.project.login.service.hot;
 
+import com.project.login.model.entity.NoteEntity;
 import com.project.login.model.vo.NoteSearchVO;
 import com.project.login.repository.NoteRepository;
-import com.project.login.mapper.NoteStatsMapper;
 import com.project.login.model.dataobject.NoteStatsDO;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.login.service.notestats.NoteStatsBatchLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.data.redis.core.HashOperations;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * 热榜读取：榜单由 Flink 作业维护在 Sorted Set 中（key 约定见 {@link HotBoardKeys}），
+ * 任意一页都只需一次范围查询，无需重新计算；组装好的页面按榜单版本号缓存在进程内
+ */
+@Slf4j
 @Service
 public class HotService {
 
     private final StringRedisTemplate redisTemplate;
-    private final RedisTemplate<String, Object> redis;
-    private final ObjectMapper objectMapper;
-    private final NoteStatsMapper noteStatsMapper;
+    private final NoteStatsBatchLoader noteStatsBatchLoader;
     private final NoteRepository noteRepository; // 注入 NoteRepository
 
-    private static final String HOT_NOTE_KEY = "hot_notes";
-    private static final String REDIS_KEY_PREFIX = "note_stats:";
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /** 版本号不变时缓存的最长有效期，保证页面中的统计数据不会长期停留 */
+    @Value("${hot.cache.max-age-ms:10000}")
+    private long cacheMaxAgeMs;
+
+    @Value("${hot.cache.max-entries:256}")
+    private int cacheMaxEntries;
+
+    private record PageKey(String boardKey, int page, int size) {
+    }
+
+    private record CachedPage(String version, long builtAt, List<NoteSearchVO> notes) {
+        boolean isFresh(String currentVersion, long maxAgeMs) {
+            return version.equals(currentVersion) && System.currentTimeMillis() - builtAt <= maxAgeMs;
+        }
+    }
+
+    private final ConcurrentHashMap<PageKey, CachedPage> pageCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PageKey, CompletableFuture<List<NoteSearchVO>>> rebuilding = new ConcurrentHashMap<>();
 
     public HotService(StringRedisTemplate redisTemplate,
-                      RedisTemplate<String, Object> redis,
-                      ObjectMapper objectMapper,
-                      NoteStatsMapper noteStatsMapper,
+                      NoteStatsBatchLoader noteStatsBatchLoader,
                       NoteRepository noteRepository) {
         this.redisTemplate = redisTemplate;
-        this.redis = redis;
-        this.objectMapper = objectMapper;
-        this.noteStatsMapper = noteStatsMapper;
+        this.noteStatsBatchLoader = noteStatsBatchLoader;
         this.noteRepository = noteRepository;
     }
 
+    /**
+     * 默认榜单（全站 hourly）前 10 条
+     */
     public List<NoteSearchVO> getHotNotesDetail() {
-        List<Long> hotNoteIds = getHotNoteIds();
-        System.out.println(hotNoteIds);
+        return getHotNotesDetail(HotBoardKeys.DEFAULT_WINDOW, null, 1, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * 分页读取热榜
+     * 结果按 (榜单, 页码, 每页数量) 缓存在进程内，以写入端维护的榜单版本号为准：
+     * 版本号未变且未超过 max-age-ms 时直接返回，每次请求只需一次 HGET；
+     * 需要重建时同一个 key 只由一个调用方执行，其余调用方等待同一结果
+     * @param window hourly / daily / weekly / realtime
+     * @param tag 为空时读全站榜；realtime 不支持按标签
+     * @param page 从 1 开始
+     * @return 只读列表，多个调用方共享
+     */
+    public List<NoteSearchVO> getHotNotesDetail(String window, String tag, int page, int size) {
+        if (!HotBoardKeys.isValidWindow(window)) {
+            throw new IllegalArgumentException("Unsupported hot window: " + window);
+        }
+        if (HotBoardKeys.REALTIME.equals(window) && tag != null && !tag.isBlank()) {
+            // realtime 榜只有全站一份，不按标签拆分
+            throw new IllegalArgumentException("Hot window realtime does not support tag: " + tag);
+        }
+        String boardKey = HotBoardKeys.keyOf(window, tag);
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        PageKey pageKey = new PageKey(boardKey, Math.max(page, 1), pageSize);
+
+        String version = Objects.toString(redisTemplate.opsForHash().get(HotBoardKeys.VERSIONS_KEY, boardKey), "0");
+        CachedPage cached = pageCache.get(pageKey);
+        if (cached != null && cached.isFresh(version, cacheMaxAgeMs)) {
+            return cached.notes();
+        }
+
+        CompletableFuture<List<NoteSearchVO>> rebuild = new CompletableFuture<>();
+        CompletableFuture<List<NoteSearchVO>> running = rebuilding.putIfAbsent(pageKey, rebuild);
+        if (running != null) {
+            // 已有调用方在重建，等待同一结果
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            List<NoteSearchVO> notes = Collections.unmodifiableList(buildPage(pageKey));
+            if (pageCache.size() >= cacheMaxEntries) {
+                evictStale();
+            }
+            pageCache.put(pageKey, new CachedPage(version, System.currentTimeMillis(), notes));
+            rebuild.complete(notes);
+            return notes;
+        } catch (RuntimeException e) {
+            rebuild.completeExceptionally(e);
+            throw e;
+        } finally {
+            rebuilding.remove(pageKey, rebuild);
+        }
+    }
+
+    /**
+     * 一次 ZREVRANGE → 一次 ES multi-get → 一次批量统计读取
+     */
+    private List<NoteSearchVO> buildPage(PageKey pageKey) {
+        List<Long> hotNoteIds = getHotNoteIds(pageKey.boardKey(), pageKey.page(), pageKey.size());
         if (hotNoteIds.isEmpty()) return Collections.emptyList();
 
-        Map<Long, NoteSearchVO> voMap = new LinkedHashMap<>();
-
-        // 使用 NoteRepository 批量查询
-        for (Long noteId : hotNoteIds) {
-            noteRepository.findById(noteId).ifPresent(entity -> {
-                NoteSearchVO vo = new NoteSearchVO();
-                vo.setNoteId(noteId);
-                vo.setTitle(entity.getTitle());
-                vo.setContentSummary(entity.getContentSummary());
-                voMap.put(noteId, vo);
-            });
+        Map<Long, NoteSearchVO> voMap = new HashMap<>();
+        for (NoteEntity entity : noteRepository.findAllById(hotNoteIds)) {
+            NoteSearchVO vo = new NoteSearchVO();
+            vo.setNoteId(entity.getId());
+            vo.setTitle(entity.getTitle());
+            vo.setContentSummary(entity.getContentSummary());
+            voMap.put(entity.getId(), vo);
         }
 
         // 批量加载状态
-        Map<Long, NoteStatsDO> statsMap = loadStatsFromRedisThenDB(hotNoteIds);
+        Map<Long, NoteStatsDO> statsMap = noteStatsBatchLoader.load(hotNoteIds);
 
         // 写入 VO
         voMap.forEach((id, vo) -> {
@@ -78,105 +158,30 @@ public class HotService {
                 .collect(Collectors.toList());
     }
 
-
-    private List<Long> getHotNoteIds() {
-        try {
-            String json = redisTemplate.opsForValue().get(HOT_NOTE_KEY);
-            if (json != null && !json.isEmpty()) {
-                // 清理可能的格式问题：去除前后空白
-                json = json.trim();
-                
-                // 处理多个 JSON 值连接的情况（如 [1,2][3,4] 或 [1,2]-[3,4]）
-                if (json.startsWith("[")) {
-                    // 找到第一个完整的 JSON 数组的结束位置
-                    int bracketCount = 0;
-                    int endIndex = -1;
-                    for (int i = 0; i < json.length(); i++) {
-                        char c = json.charAt(i);
-                        if (c == '[') bracketCount++;
-                        if (c == ']') bracketCount--;
-                        if (bracketCount == 0 && i > 0) {
-                            endIndex = i;
-                            break;
-                        }
-                    }
-                    if (endIndex > 0 && endIndex < json.length() - 1) {
-                        // 如果后面还有内容，只取第一个完整的 JSON 数组
-                        json = json.substring(0, endIndex + 1);
-                    }
-                }
-                
-                // 验证 JSON 格式：必须是有效的数组格式
-                if (!json.startsWith("[") || !json.endsWith("]")) {
-                    throw new IllegalArgumentException("Redis 中的数据不是有效的 JSON 数组格式: " + json);
-                }
-                
-                return objectMapper.readValue(json, new TypeReference<List<Long>>() {});
-            }
-        } catch (Exception e) {
-            // 记录详细的错误信息，包括原始 JSON 数据
-            String json = redisTemplate.opsForValue().get(HOT_NOTE_KEY);
-            System.err.println("========== 解析热榜数据失败 ==========");
-            System.err.println("原始数据: " + json);
-            System.err.println("数据长度: " + (json != null ? json.length() : 0));
-            System.err.println("错误类型: " + e.getClass().getName());
-            System.err.println("错误信息: " + e.getMessage());
-            e.printStackTrace();
-            System.err.println("=====================================");
+    /**
+     * 缓存条目达到上限时先清掉过期条目，仍然超限则整体清空（条目只是可重建的页面）
+     */
+    private void evictStale() {
+        long now = System.currentTimeMillis();
+        pageCache.entrySet().removeIf(e -> now - e.getValue().builtAt() > cacheMaxAgeMs);
+        if (pageCache.size() >= cacheMaxEntries) {
+            pageCache.clear();
         }
-        return Collections.emptyList();
     }
 
-    private Map<Long, NoteStatsDO> loadStatsFromRedisThenDB(List<Long> noteIds) {
-        Map<Long, NoteStatsDO> result = new HashMap<>();
-        HashOperations<String, Object, Object> ops = redis.opsForHash();
-
-        for (Long id : noteIds) {
-            String key = REDIS_KEY_PREFIX + id;
-            Map<Object, Object> map = ops.entries(key);
-
-            if (map == null || map.isEmpty()) {
-                // Redis 未命中 → 查询 MySQL
-                NoteStatsDO db = noteStatsMapper.getById(id);
-                if (db == null) db = defaultStats(id);
-                writeStatsToRedis(key, ops, db);
-                map = ops.entries(key);
+    private List<Long> getHotNoteIds(String key, int page, int pageSize) {
+        long start = (long) (page - 1) * pageSize;
+        Set<String> members = redisTemplate.opsForZSet().reverseRange(key, start, start + pageSize - 1);
+        if (members == null || members.isEmpty()) return Collections.emptyList();
+
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            try {
+                ids.add(Long.parseLong(member));
+            } catch (NumberFormatException e) {
+                log.warn("热榜中存在非法成员, key={}, member={}", key, member);
             }
-
-            result.put(id, mapToStats(id, map));
         }
-
-        return result;
-    }
-
-    private void writeStatsToRedis(String key, HashOperations<String, Object, Object> ops, NoteStatsDO db) {
-        ops.put(key, "authorName", db.getAuthorName());
-        ops.put(key, "views", String.valueOf(db.getViews()));
-        ops.put(key, "likes", String.valueOf(db.getLikes()));
-        ops.put(key, "favorites", String.valueOf(db.getFavorites()));
-        ops.put(key, "comments", String.valueOf(db.getComments()));
-        redis.expire(key, 7, java.util.concurrent.TimeUnit.DAYS);
-    }
-
-    private NoteStatsDO mapToStats(Long id, Map<Object, Object> map) {
-        NoteStatsDO stats = new NoteStatsDO();
-        stats.setNoteId(id);
-        stats.setAuthorName(map.getOrDefault("authorName", "未知作者").toString());
-        stats.setViews(Long.parseLong(map.getOrDefault("views", "0").toString()));
-        stats.setLikes(Long.parseLong(map.getOrDefault("likes", "0").toString()));
-        stats.setFavorites(Long.parseLong(map.getOrDefault("favorites", "0").toString()));
-        stats.setComments(Long.parseLong(map.getOrDefault("comments", "0").toString()));
-        return stats;
-    }
-
-    private NoteStatsDO defaultStats(Long noteId) {
-        NoteStatsDO stats = new NoteStatsDO();
-        stats.setNoteId(noteId);
-        stats.setAuthorName("未知作者");
-        stats.setViews(0L);
-        stats.setLikes(0L);
-        stats.setFavorites(0L);
-        stats.setComments(0L);
-        return stats;
+        return ids;
     }
 }
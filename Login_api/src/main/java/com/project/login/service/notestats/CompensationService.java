@@ -4,75 +4,258 @@ import com.project.login.mapper.NoteStatsCompensationMapper;
 import com.project.login.mapper.NoteStatsMapper;
 import com.project.login.model.dataobject.NoteStatsCompensationDO;
 import com.project.login.model.dataobject.NoteStatsDO;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * 补偿表重放
+ * 1. 多个 worker（可跨节点）并行，每批在一个事务内用 FOR UPDATE SKIP LOCKED 认领到期的 PENDING 记录，互不阻塞
+ * 2. 补偿记录是统计快照，同一笔记的多条记录只保留最新的一条，整批用一条多行 upsert 写入
+ *    （与落库消费者相同，last_activity_at 更旧的快照不会回退计数，重复重放是幂等的）
+ * 3. upsert 违反约束时二分定位被拒绝的笔记，只有这些记录按指数退避安排下次重试，超过 max-retry 标记为 FAILED；
+ *    其余异常（DB 不可用、SQL 错误等）整批回滚，记录保持 PENDING，不计重试次数，下个调度周期再认领
+ * 4. 调度线程只负责提交 worker，不等待其结束（调度线程池只有一个线程，不阻塞其他定时任务），
+ *    上一轮仍在运行时跳过本轮，结果由最后结束的 worker 汇总打印
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class CompensationService {
 
     private final NoteStatsCompensationMapper compensationMapper;
     private final NoteStatsMapper noteStatsMapper;
-    private static final int MAX_RETRY = 3;
+    private final TransactionTemplate transactionTemplate;
 
+    @Value("${note-stats.compensation.batch-size:200}")
+    private int batchSize;
+
+    @Value("${note-stats.compensation.workers:2}")
+    private int workers;
+
+    @Value("${note-stats.compensation.max-retry:8}")
+    private int maxRetry;
+
+    @Value("${note-stats.compensation.backoff-base-seconds:30}")
+    private long backoffBaseSeconds;
+
+    @Value("${note-stats.compensation.backoff-max-seconds:3600}")
+    private long backoffMaxSeconds;
+
+    /** 单次调度的最长运行时间，保持在调度周期以内 */
+    @Value("${note-stats.compensation.max-run-ms:50000}")
+    private long maxRunMs;
+
+    private static final int LAST_ERROR_MAX_LENGTH = 255;
+
+    private ExecutorService workerPool;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private record BatchResult(int claimed, int notes, int rejected) {
+        static final BatchResult EMPTY = new BatchResult(0, 0, 0);
+    }
+
+    public CompensationService(NoteStatsCompensationMapper compensationMapper,
+                               NoteStatsMapper noteStatsMapper,
+                               TransactionTemplate transactionTemplate) {
+        this.compensationMapper = compensationMapper;
+        this.noteStatsMapper = noteStatsMapper;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        workerPool = Executors.newFixedThreadPool(Math.max(workers, 1), new ThreadFactory() {
+            private int index;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "compensation-replay-" + index++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * 提交 worker 并行排空到期的补偿记录，直到没有可认领的记录或超过 max-run-ms；立即返回
+     */
     public void retryCompensation() {
-        List<NoteStatsCompensationDO> pendingList = compensationMapper.getPendingOrFailed();
+        if (!running.compareAndSet(false, true)) {
+            log.debug("上一轮补偿重放仍在进行，跳过本轮");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + maxRunMs;
 
-        for (NoteStatsCompensationDO comp : pendingList) {
+        List<CompletableFuture<int[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(workers, 1); i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> drain(deadline), workerPool));
+            }
+        } catch (RejectedExecutionException e) {
+            // 停机中
+            running.set(false);
+            return;
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            running.set(false);
+            int claimed = 0, rejected = 0, batches = 0;
+            for (CompletableFuture<int[]> future : futures) {
+                if (future.isCompletedExceptionally()) continue;
+                int[] counts = future.join();
+                batches += counts[0];
+                claimed += counts[1];
+                rejected += counts[2];
+            }
+            if (error != null) {
+                log.error("补偿重放 worker 异常", error);
+            }
+            if (claimed > 0) {
+                log.info("补偿重放: batches={}, rows={}, rejected={}, cost={}ms",
+                        batches, claimed, rejected, System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    /**
+     * @return {批次数, 认领行数, 被拒绝的行数}
+     */
+    private int[] drain(long deadline) {
+        int[] counts = new int[3];
+        while (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted()) {
+            BatchResult result;
             try {
+                result = transactionTemplate.execute(status -> replayBatch());
+            } catch (TransientDataAccessException e) {
+                // 死锁 / 锁超时：整批回滚，记录保持 PENDING，稍后重试
+                log.warn("补偿重放批次回滚，稍后重试", e);
+                break;
+            } catch (RuntimeException e) {
+                // DB 不可用、SQL 或映射错误：整批回滚，不计重试次数，下个调度周期再认领
+                log.error("补偿重放批次失败，整批回滚，下个调度周期重试", e);
+                break;
+            }
+            if (result == null || result.claimed() == 0) break;
+            counts[0]++;
+            counts[1] += result.claimed();
+            counts[2] += result.rejected();
+            if (result.claimed() < batchSize) break;
+        }
+        return counts;
+    }
 
-                NoteStatsDO db = noteStatsMapper.getById(comp.getNoteId());
-
-                long dv = comp.getViews() - (db == null || db.getViews() == null ? 0L : db.getViews());
-                long dl = comp.getLikes() - (db == null || db.getLikes() == null ? 0L : db.getLikes());
-                long df = comp.getFavorites() - (db == null || db.getFavorites() == null ? 0L : db.getFavorites());
-                long dc = comp.getComments() - (db == null || db.getComments() == null ? 0L : db.getComments());
-
-                NoteStatsDO deltas = new NoteStatsDO();
-                deltas.setNoteId(comp.getNoteId());
-                deltas.setAuthorName(comp.getAuthorName());
-                deltas.setViews(Math.max(0, dv));
-                deltas.setLikes(Math.max(0, dl));
-                deltas.setFavorites(Math.max(0, df));
-                deltas.setComments(Math.max(0, dc));
-                deltas.setLastActivityAt(
-                        comp.getLastActivityAt() != null ?
-                                comp.getLastActivityAt() :
-                                LocalDateTime.now()
-                );
-
-                // 没有需要补偿的字段
-                if (deltas.getViews() == 0 &&
-                        deltas.getLikes() == 0 &&
-                        deltas.getFavorites() == 0 &&
-                        deltas.getComments() == 0) {
-
-                    comp.setStatus("DONE");
-                    compensationMapper.updateStatus(comp);
-                    continue;
-                }
+    /**
+     * 在当前事务内认领一批 → 按笔记合并 → 多行 upsert → 更新补偿记录状态
+     */
+    private BatchResult replayBatch() {
+        List<NoteStatsCompensationDO> claimed = compensationMapper.claimPending(batchSize);
+        if (claimed.isEmpty()) return BatchResult.EMPTY;
+
+        Map<Long, NoteStatsDO> latest = new LinkedHashMap<>();
+        Map<Long, List<NoteStatsCompensationDO>> rowsByNote = new HashMap<>();
+        for (NoteStatsCompensationDO comp : claimed) {
+            rowsByNote.computeIfAbsent(comp.getNoteId(), k -> new ArrayList<>()).add(comp);
+            latest.merge(comp.getNoteId(), toSnapshot(comp), (old, cur) ->
+                    cur.getLastActivityAt().isBefore(old.getLastActivityAt()) ? old : cur);
+        }
 
-                int updated = noteStatsMapper.incrementByDeltas(deltas);
+        Map<Long, String> rejected = new HashMap<>();
+        apply(new ArrayList<>(latest.values()), rejected);
 
-                if (updated > 0) {
-                    comp.setStatus("DONE");
+        List<Long> doneIds = new ArrayList<>();
+        int rejectedRows = 0;
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, List<NoteStatsCompensationDO>> entry : rowsByNote.entrySet()) {
+            String error = rejected.get(entry.getKey());
+            for (NoteStatsCompensationDO comp : entry.getValue()) {
+                if (error == null) {
+                    doneIds.add(comp.getId());
+                    continue;
+                }
+                rejectedRows++;
+                int retry = (comp.getRetryCount() == null ? 0 : comp.getRetryCount()) + 1;
+                comp.setRetryCount(retry);
+                comp.setLastError(error);
+                if (retry >= maxRetry) {
+                    comp.setStatus("FAILED");
+                    comp.setNextRetryAt(null);
+                    log.warn("补偿记录重试耗尽, id={}, noteId={}, error={}", comp.getId(), comp.getNoteId(), error);
                 } else {
-                    comp.setRetryCount(comp.getRetryCount() + 1);
-                    comp.setStatus(comp.getRetryCount() >= MAX_RETRY ? "FAILED" : "PENDING");
+                    comp.setStatus("PENDING");
+                    comp.setNextRetryAt(now.plusSeconds(backoffSeconds(retry)));
                 }
-
-            } catch (Exception e) {
-                log.error("compensation retry exception for id={}", comp.getId(), e);
-                comp.setRetryCount(comp.getRetryCount() + 1);
-                if (comp.getRetryCount() >= MAX_RETRY) comp.setStatus("FAILED");
+                compensationMapper.updateRetry(comp);
             }
+        }
+        if (!doneIds.isEmpty()) {
+            compensationMapper.markDone(doneIds);
+        }
+        return new BatchResult(claimed.size(), latest.size(), rejectedRows);
+    }
 
-            compensationMapper.updateStatus(comp);
+    /**
+     * 多行 upsert；违反约束时二分，单独执行仍被拒绝的笔记记入 rejected，其余异常直接抛出让整批回滚
+     */
+    private void apply(List<NoteStatsDO> rows, Map<Long, String> rejected) {
+        try {
+            noteStatsMapper.upsertTotalsBatch(rows);
+        } catch (DataIntegrityViolationException e) {
+            if (rows.size() == 1) {
+                rejected.put(rows.get(0).getNoteId(), truncate(e.getMessage()));
+                return;
+            }
+            int mid = rows.size() / 2;
+            apply(rows.subList(0, mid), rejected);
+            apply(rows.subList(mid, rows.size()), rejected);
         }
     }
+
+    private NoteStatsDO toSnapshot(NoteStatsCompensationDO comp) {
+        NoteStatsDO snapshot = new NoteStatsDO();
+        snapshot.setNoteId(comp.getNoteId());
+        snapshot.setAuthorName(comp.getAuthorName() == null ? "" : comp.getAuthorName());
+        snapshot.setViews(Math.max(0, nonNull(comp.getViews())));
+        snapshot.setLikes(Math.max(0, nonNull(comp.getLikes())));
+        snapshot.setFavorites(Math.max(0, nonNull(comp.getFavorites())));
+        snapshot.setComments(Math.max(0, nonNull(comp.getComments())));
+        LocalDateTime at = comp.getLastActivityAt() != null ? comp.getLastActivityAt()
+                : comp.getCreatedAt() != null ? comp.getCreatedAt() : LocalDateTime.now();
+        snapshot.setLastActivityAt(at);
+        return snapshot;
+    }
+
+    /**
+     * base * 2^(retry-1)，封顶 backoff-max-seconds，加 ±20% 抖动避免多节点同时重试
+     */
+    private long backoffSeconds(int retry) {
+        long exp = backoffBaseSeconds << Math.min(retry - 1, 20);
+        long capped = Math.min(exp, backoffMaxSeconds);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Math.max(1L, (long) (capped * jitter));
+    }
+
+    private static long nonNull(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) return "unknown";
+        return message.length() <= LAST_ERROR_MAX_LENGTH ? message : message.substring(0, LAST_ERROR_MAX_LENGTH);
+    }
 }
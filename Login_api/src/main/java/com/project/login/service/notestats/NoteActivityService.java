@@ -0,0 +1,306 @@
+package com.project.login.service.notestats;
+
+import com.project.login.mapper.NoteStatsDailyMapper;
+import com.project.login.model.dataobject.NoteStatsDailyDO;
+import com.project.login.model.vo.NoteActivityBucketVO;
+import com.project.login.model.vo.NoteActivityVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.*;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔记按时间分桶的活跃度序列
+ * 1. Redis：每篇笔记每天一个 note_activity:{noteId}:{yyyyMMdd} Hash，字段为 "{HH}{代号}"（v/l/f/c），
+ *    一天最多 96 个整数字段，保持 listpack 编码；随统计增量一起写入，按 retention-days 过期
+ * 2. 当天有活动的 noteId 记在 note_activity_notes:{yyyyMMdd}，每日汇总只扫描这个集合
+ * 3. MySQL：note_stats_daily 保存每日汇总，覆盖 Redis 保留期之外的历史
+ * 查询"最近 N 小时"只读取涉及的几个天 Hash（一次 pipeline），复杂度与桶数成正比，不扫描行为事件
+ */
+@Slf4j
+@Service
+public class NoteActivityService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final NoteStatsDailyMapper dailyMapper;
+
+    /** 小时桶保留天数；每次写入都会续期，保证至少 (retention-days - 1) * 24 小时可查 */
+    @Value("${note-stats.activity.retention-days:8}")
+    private int retentionDays;
+
+    @Value("${note-stats.activity.rollup-chunk-size:500}")
+    private int rollupChunkSize;
+
+    private static final String DAY_KEY_PREFIX = "note_activity:";
+    private static final String DAY_NOTES_KEY_PREFIX = "note_activity_notes:";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /** 统计字段 → 小时桶字段代号 */
+    private static final Map<String, String> FIELD_CODES = new LinkedHashMap<>();
+    static {
+        FIELD_CODES.put("views", "v");
+        FIELD_CODES.put("likes", "l");
+        FIELD_CODES.put("favorites", "f");
+        FIELD_CODES.put("comments", "c");
+    }
+
+    public NoteActivityService(StringRedisTemplate redisTemplate, NoteStatsDailyMapper dailyMapper) {
+        this.redisTemplate = redisTemplate;
+        this.dailyMapper = dailyMapper;
+    }
+
+    /**
+     * 把一个周期合并后的增量计入当前小时桶：每篇笔记若干 HINCRBY + EXPIRE，整块一次 pipeline
+     * @param noteIds 本次要记录的笔记
+     * @param deltas noteId → (field → delta)
+     */
+    public void record(List<Long> noteIds, Map<Long, Map<String, Long>> deltas, LocalDateTime at) {
+        if (noteIds.isEmpty()) return;
+        LocalDate day = at.toLocalDate();
+        String hour = hourPrefix(at.getHour());
+        String notesKey = dayNotesKeyOf(day);
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(retentionDays);
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                List<String> active = new ArrayList<>(noteIds.size());
+                for (Long noteId : noteIds) {
+                    Map<String, Long> fields = deltas.get(noteId);
+                    if (fields == null) continue;
+                    String key = dayKeyOf(noteId, day);
+                    boolean written = false;
+                    for (Map.Entry<String, String> code : FIELD_CODES.entrySet()) {
+                        long delta = fields.getOrDefault(code.getKey(), 0L);
+                        if (delta == 0) continue;
+                        ops.opsForHash().increment(key, hour + code.getValue(), delta);
+                        written = true;
+                    }
+                    if (!written) continue;
+                    ops.expire(key, ttlSeconds, TimeUnit.SECONDS);
+                    active.add(noteId.toString());
+                }
+                if (!active.isEmpty()) {
+                    ops.opsForSet().add(notesKey, active.toArray(new String[0]));
+                    ops.expire(notesKey, ttlSeconds, TimeUnit.SECONDS);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 最近 hours 个小时桶（含当前小时），超出 Redis 保留期的部分截断
+     */
+    public NoteActivityVO getHourly(Long noteId, int hours) {
+        int maxHours = Math.max(retentionDays - 1, 1) * 24;
+        int size = Math.min(Math.max(hours, 1), maxHours);
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime start = end.minusHours(size - 1);
+
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate d = start.toLocalDate(); !d.isAfter(end.toLocalDate()); d = d.plusDays(1)) {
+            days.add(d);
+        }
+        Map<LocalDate, Map<String, String>> hashes = readDays(noteId, days);
+
+        List<NoteActivityBucketVO> buckets = new ArrayList<>(size);
+        for (LocalDateTime t = start; !t.isAfter(end); t = t.plusHours(1)) {
+            Map<String, String> hash = hashes.getOrDefault(t.toLocalDate(), Map.of());
+            String prefix = hourPrefix(t.getHour());
+            buckets.add(NoteActivityBucketVO.builder()
+                    .start(t)
+                    .views(parseLong(hash.get(prefix + "v")))
+                    .likes(parseLong(hash.get(prefix + "l")))
+                    .favorites(parseLong(hash.get(prefix + "f")))
+                    .comments(parseLong(hash.get(prefix + "c")))
+                    .build());
+        }
+        return toActivity(noteId, "HOUR", start, end.plusHours(1), buckets);
+    }
+
+    /**
+     * 最近 days 天（含今天）的按天序列：已汇总的天读 MySQL，尚未汇总且仍在保留期内的天（通常是今天和昨天）读 Redis
+     */
+    public NoteActivityVO getDaily(Long noteId, int days) {
+        int size = Math.min(Math.max(days, 1), 366);
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusDays(size - 1);
+
+        Map<LocalDate, NoteStatsDailyDO> rows = new HashMap<>();
+        for (NoteStatsDailyDO row : dailyMapper.getRange(noteId, from, today)) {
+            rows.put(row.getStatDate(), row);
+        }
+
+        LocalDate redisFrom = today.minusDays(Math.max(retentionDays - 1, 0));
+        List<LocalDate> fromRedis = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(today); d = d.plusDays(1)) {
+            if (!rows.containsKey(d) && !d.isBefore(redisFrom)) fromRedis.add(d);
+        }
+        Map<LocalDate, Map<String, String>> hashes = readDays(noteId, fromRedis);
+        hashes.forEach((d, hash) -> rows.put(d, sumDay(noteId, d, hash)));
+
+        List<NoteActivityBucketVO> buckets = new ArrayList<>(size);
+        for (LocalDate d = from; !d.isAfter(today); d = d.plusDays(1)) {
+            NoteStatsDailyDO row = rows.get(d);
+            buckets.add(NoteActivityBucketVO.builder()
+                    .start(d.atStartOfDay())
+                    .views(row == null ? 0L : nonNull(row.getViews()))
+                    .likes(row == null ? 0L : nonNull(row.getLikes()))
+                    .favorites(row == null ? 0L : nonNull(row.getFavorites()))
+                    .comments(row == null ? 0L : nonNull(row.getComments()))
+                    .build());
+        }
+        return toActivity(noteId, "DAY", from.atStartOfDay(), today.plusDays(1).atStartOfDay(), buckets);
+    }
+
+    /**
+     * 把某一天的小时桶汇总写入 note_stats_daily
+     * SSCAN 当天活跃笔记集合，每块一次 pipeline 读取 + 一条多行 upsert；结果是完整求和，可重复执行
+     * @return 汇总的笔记数
+     */
+    public int rollupDay(LocalDate day) {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        List<Long> chunk = new ArrayList<>(rollupChunkSize);
+        ScanOptions options = ScanOptions.scanOptions().count(rollupChunkSize).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(dayNotesKeyOf(day), options)) {
+            while (cursor.hasNext()) {
+                try {
+                    chunk.add(Long.parseLong(cursor.next()));
+                } catch (NumberFormatException ignored) {
+                    continue;
+                }
+                if (chunk.size() >= rollupChunkSize) {
+                    total += rollupChunk(day, chunk);
+                    chunk = new ArrayList<>(rollupChunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            total += rollupChunk(day, chunk);
+        }
+        log.info("笔记活跃度日汇总完成: day={}, notes={}, cost={}ms", day, total, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private int rollupChunk(LocalDate day, List<Long> noteIds) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long noteId : noteIds) {
+                    ops.opsForHash().entries(dayKeyOf(noteId, day));
+                }
+                return null;
+            }
+        });
+
+        List<NoteStatsDailyDO> rows = new ArrayList<>(noteIds.size());
+        for (int i = 0; i < noteIds.size(); i++) {
+            Map<String, String> hash = i < results.size() ? toStringMap(results.get(i)) : Map.of();
+            if (hash.isEmpty()) continue;
+            rows.add(sumDay(noteIds.get(i), day, hash));
+        }
+        if (!rows.isEmpty()) {
+            dailyMapper.upsertBatch(rows);
+        }
+        return rows.size();
+    }
+
+    private Map<LocalDate, Map<String, String>> readDays(Long noteId, List<LocalDate> days) {
+        Map<LocalDate, Map<String, String>> hashes = new HashMap<>();
+        if (days.isEmpty()) return hashes;
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (LocalDate day : days) {
+                    ops.opsForHash().entries(dayKeyOf(noteId, day));
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < days.size(); i++) {
+            Map<String, String> hash = i < results.size() ? toStringMap(results.get(i)) : Map.of();
+            if (!hash.isEmpty()) hashes.put(days.get(i), hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * 一天的小时桶按字段代号求和
+     */
+    private NoteStatsDailyDO sumDay(Long noteId, LocalDate day, Map<String, String> hash) {
+        Map<String, Long> sums = new HashMap<>();
+        hash.forEach((field, value) -> {
+            if (field.length() < 3) return;
+            sums.merge(field.substring(2), parseLong(value), Long::sum);
+        });
+        return NoteStatsDailyDO.builder()
+                .noteId(noteId)
+                .statDate(day)
+                .views(sums.getOrDefault("v", 0L))
+                .likes(sums.getOrDefault("l", 0L))
+                .favorites(sums.getOrDefault("f", 0L))
+                .comments(sums.getOrDefault("c", 0L))
+                .build();
+    }
+
+    private NoteActivityVO toActivity(Long noteId, String granularity, LocalDateTime from, LocalDateTime to,
+                                      List<NoteActivityBucketVO> buckets) {
+        return NoteActivityVO.builder()
+                .noteId(noteId)
+                .granularity(granularity)
+                .from(from)
+                .to(to)
+                .views(buckets.stream().mapToLong(NoteActivityBucketVO::getViews).sum())
+                .likes(buckets.stream().mapToLong(NoteActivityBucketVO::getLikes).sum())
+                .favorites(buckets.stream().mapToLong(NoteActivityBucketVO::getFavorites).sum())
+                .comments(buckets.stream().mapToLong(NoteActivityBucketVO::getComments).sum())
+                .buckets(buckets)
+                .build();
+    }
+
+    private static Map<String, String> toStringMap(Object result) {
+        if (!(result instanceof Map<?, ?> map) || map.isEmpty()) return Map.of();
+        Map<String, String> hash = new HashMap<>();
+        map.forEach((k, v) -> {
+            if (k != null && v != null) hash.put(k.toString(), v.toString());
+        });
+        return hash;
+    }
+
+    private static String dayKeyOf(Long noteId, LocalDate day) {
+        return DAY_KEY_PREFIX + noteId + ":" + DAY_FORMAT.format(day);
+    }
+
+    private static String dayNotesKeyOf(LocalDate day) {
+        return DAY_NOTES_KEY_PREFIX + DAY_FORMAT.format(day);
+    }
+
+    private static String hourPrefix(int hour) {
+        return hour < 10 ? "0" + hour : String.valueOf(hour);
+    }
+
+    private static long nonNull(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static long parseLong(Object o) {
+        if (o == null) return 0L;
+        try { return Long.parseLong(o.toString()); } catch (Exception ex) { return 0L; }
+    }
+}
@@ -0,0 +1,238 @@
+package com.project.login.service.notestats;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * 笔记统计的本地写缓冲（write-behind）
+ * 1. 每个 (noteId, field) 一个 LongAdder，高并发自增无锁、不访问 Redis
+ * 2. 单线程每隔 flush-interval-ms 刷新一次，分三段交给 {@link Sink}：
+ *    锁外 prepare（为有增量的笔记准备未命中时的种子，可访问 DB）→ 写锁内取出增量并 write（一次 pipeline 写 Redis）
+ *    → 锁外 afterWrite（活跃度等附带处理）；write 返回未写入的 noteId，只有这些笔记的增量放回计数单元
+ * 3. 读路径通过 {@link #readConsistent} 读取 Redis 并用 {@link #pendingDeltas} 合并尚未写入的增量；
+ *    写锁只覆盖取出增量到写完 Redis 这一段，读路径不会看到增量"既不在本地也不在 Redis"或"两边都在"的中间状态，
+ *    也不会等待 DB
+ * 进程崩溃最多丢失一个刷新周期内的增量
+ */
+@Slf4j
+@Component
+public class NoteStatsAccumulator {
+
+    @Value("${note-stats.accumulator.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    /** 连续多少个周期没有增量后回收该计数单元 */
+    private static final int IDLE_TICKS_BEFORE_EVICT = 50;
+
+    private record Key(Long noteId, String field) {}
+
+    private static final class Cell {
+        final LongAdder adder = new LongAdder();
+        /** 正在执行 add 的线程数，回收前需等其归零 */
+        final LongAdder inflight = new LongAdder();
+        volatile boolean retired;
+        int idleTicks;
+
+        boolean tryAdd(long delta) {
+            inflight.increment();
+            try {
+                if (retired) return false;
+                adder.add(delta);
+                return true;
+            } finally {
+                inflight.decrement();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Cell> cells = new ConcurrentHashMap<>();
+    /** 取出增量到写完 Redis 期间持有写锁，读路径乐观读、校验失败再加读锁 */
+    private final StampedLock flushLock = new StampedLock();
+
+    private ScheduledExecutorService scheduler;
+    private volatile Sink<?> sink;
+
+    /**
+     * 刷新目标，由 NoteStatsService 实现；只有 write 在写锁内执行
+     * @param <P> prepare 的结果，原样交给 write / afterWrite
+     */
+    public interface Sink<P> {
+
+        /** 写锁外：为即将刷新的笔记做准备，可以访问 DB；失败时 write 收到 null */
+        P prepare(Set<Long> noteIds);
+
+        /** 写锁内：把 noteId → (field → delta) 一次 pipeline 写入 Redis，返回未写入、需要重试的 noteId */
+        Set<Long> write(Map<Long, Map<String, Long>> batch, P prepared);
+
+        /** 写锁外：已写入（或被丢弃）的增量的后续处理 */
+        void afterWrite(Map<Long, Map<String, Long>> written, P prepared);
+    }
+
+    /**
+     * 由 NoteStatsService 启动
+     */
+    public synchronized void start(Sink<?> sink) {
+        if (scheduler != null) return;
+        this.sink = sink;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "note-stats-accumulator");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::safeFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩余增量刷掉
+        safeFlush();
+    }
+
+    public void add(Long noteId, String field, long delta) {
+        Key key = new Key(noteId, field);
+        while (true) {
+            Cell cell = cells.computeIfAbsent(key, k -> new Cell());
+            if (cell.tryAdd(delta)) return;
+            // 恰好被回收，换新的计数单元重试
+        }
+    }
+
+    /**
+     * 在没有刷新进行中的时刻执行 read（读取 Redis + {@link #pendingDeltas}），保证增量只被计入一次
+     */
+    public <T> T readConsistent(Supplier<T> read) {
+        long stamp = flushLock.tryOptimisticRead();
+        if (stamp != 0) {
+            T value = read.get();
+            if (flushLock.validate(stamp)) return value;
+        }
+        stamp = flushLock.readLock();
+        try {
+            return read.get();
+        } finally {
+            flushLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 尚未写入 Redis 的增量（field → delta）；需在 {@link #readConsistent} 内与 Redis 读取一起调用
+     */
+    public Map<String, Long> pendingDeltas(Long noteId, Collection<String> fields) {
+        Map<String, Long> result = new HashMap<>();
+        for (String field : fields) {
+            Cell cell = cells.get(new Key(noteId, field));
+            long delta = cell == null ? 0L : cell.adder.sum();
+            if (delta != 0) result.put(field, delta);
+        }
+        return result;
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("笔记统计本地增量刷新失败", e);
+        }
+    }
+
+    private synchronized void flush() {
+        flushTo(sink);
+    }
+
+    private <P> void flushTo(Sink<P> sink) {
+        // 锁外准备种子：只取当前有增量的笔记，之后新出现的笔记在 write 中未命中，下个周期再准备
+        Set<Long> noteIds = new HashSet<>();
+        cells.forEach((key, cell) -> {
+            if (cell.adder.sum() != 0) noteIds.add(key.noteId());
+        });
+        P prepared = null;
+        if (!noteIds.isEmpty()) {
+            try {
+                prepared = sink.prepare(noteIds);
+            } catch (Exception e) {
+                log.error("笔记统计刷新准备失败, notes={}", noteIds.size(), e);
+            }
+        }
+
+        Map<Long, Map<String, Long>> batch;
+        Set<Long> failed;
+        long stamp = flushLock.writeLock();
+        try {
+            batch = drain();
+            if (batch.isEmpty()) return;
+            try {
+                failed = sink.write(batch, prepared);
+            } catch (Exception e) {
+                // sink 未能报告结果（不应发生）：全部放回，下个周期重试
+                log.error("笔记统计增量写入 Redis 失败, notes={}", batch.size(), e);
+                failed = batch.keySet();
+            }
+            // 只把未写入的笔记的增量放回计数单元；放回也在写锁内，读路径看不到中间状态
+            for (Long noteId : failed) {
+                Map<String, Long> deltas = batch.get(noteId);
+                if (deltas != null) {
+                    deltas.forEach((field, delta) -> add(noteId, field, delta));
+                }
+            }
+        } finally {
+            flushLock.unlockWrite(stamp);
+        }
+
+        Map<Long, Map<String, Long>> written = new HashMap<>(batch);
+        written.keySet().removeAll(failed);
+        if (written.isEmpty()) return;
+        try {
+            sink.afterWrite(written, prepared);
+        } catch (Exception e) {
+            log.warn("笔记统计写入后处理失败, notes={}", written.size(), e);
+        }
+    }
+
+    /**
+     * 取出全部计数单元的增量，顺带回收长时间无增量的单元；需持有写锁
+     */
+    private Map<Long, Map<String, Long>> drain() {
+        Map<Long, Map<String, Long>> batch = new HashMap<>();
+        Iterator<Map.Entry<Key, Cell>> it = cells.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Cell> entry = it.next();
+            Key key = entry.getKey();
+            Cell cell = entry.getValue();
+
+            long delta = cell.adder.sumThenReset();
+            if (delta == 0 && ++cell.idleTicks >= IDLE_TICKS_BEFORE_EVICT) {
+                // 长时间无增量：先标记回收，等正在 add 的线程退出后再取一次残留
+                cell.retired = true;
+                cells.remove(key, cell);
+                while (cell.inflight.sum() != 0) {
+                    Thread.onSpinWait();
+                }
+                delta = cell.adder.sumThenReset();
+            } else if (delta != 0) {
+                cell.idleTicks = 0;
+            }
+            if (delta == 0) continue;
+
+            batch.computeIfAbsent(key.noteId(), k -> new HashMap<>()).merge(key.field(), delta, Long::sum);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,128 @@
+package com.project.login.service.notestats;
+
+import com.project.login.mapper.NoteStatsMapper;
+import com.project.login.model.dataobject.NoteStatsDO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 列表页批量加载笔记统计
+ * 1. 一次 pipeline 读取全部笔记的统计（存储格式见 {@link NoteStatsRedisStore}）
+ * 2. 未命中的 noteId 用一次 IN 查询从 MySQL 取出，库中也没有的给默认值
+ * 3. 未命中的结果用一次 pipeline 回写（每个 key 一次 HSET 多字段 + EXPIRE）
+ * 一页结果最多两次 Redis 往返、一次 SQL
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NoteStatsBatchLoader {
+
+    private final NoteStatsRedisStore statsStore;
+    private final NoteStatsMapper noteStatsMapper;
+
+    private static final String UNKNOWN_AUTHOR = "未知作者";
+
+    /**
+     * @return noteId → 统计数据，每个传入的 noteId 都有值
+     */
+    public Map<Long, NoteStatsDO> load(List<Long> noteIds) {
+        Map<Long, NoteStatsDO> result = new HashMap<>();
+        List<Long> ids = noteIds == null ? List.of()
+                : noteIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) return result;
+
+        List<Map<String, String>> hashes = statsStore.readAll(ids);
+
+        List<Long> missed = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Map<String, String> hash = hashes.get(i);
+            if (!hash.isEmpty()) {
+                result.put(ids.get(i), mapToStats(ids.get(i), hash));
+            } else {
+                missed.add(ids.get(i));
+            }
+        }
+        if (missed.isEmpty()) return result;
+
+        // Redis 未命中 → 一次 IN 查询
+        Map<Long, NoteStatsDO> loaded = new HashMap<>();
+        for (NoteStatsDO db : noteStatsMapper.getByIds(missed)) {
+            loaded.put(db.getNoteId(), db);
+        }
+        for (Long id : missed) {
+            result.put(id, withDefaults(loaded.getOrDefault(id, defaultStats(id))));
+        }
+        // 只在仍未命中时回填库中已有的统计：回填前累加器可能已写入种子和增量，不能被旧快照覆盖
+        List<NoteStatsDO> writeBack = new ArrayList<>(loaded.values());
+        try {
+            statsStore.seedIfAbsent(writeBack);
+        } catch (Exception e) {
+            log.warn("回写笔记统计缓存失败, size={}", writeBack.size(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Redis Hash → DO；updatedAt 缺失时取 last_activity_at
+     */
+    private NoteStatsDO mapToStats(Long id, Map<?, ?> map) {
+        NoteStatsDO stats = new NoteStatsDO();
+        stats.setNoteId(id);
+        Object author = map.get("authorName");
+        stats.setAuthorName(author == null || author.toString().isEmpty() ? UNKNOWN_AUTHOR : author.toString());
+        stats.setViews(parseLong(map.get("views")));
+        stats.setLikes(parseLong(map.get("likes")));
+        stats.setFavorites(parseLong(map.get("favorites")));
+        stats.setComments(parseLong(map.get("comments")));
+        stats.setLastActivityAt(parseDateTime(map.get("last_activity_at")));
+        LocalDateTime updatedAt = parseDateTime(map.get("updatedAt"));
+        stats.setUpdatedAt(updatedAt != null ? updatedAt : stats.getLastActivityAt());
+        stats.setVersion(parseLong(map.get("version")));
+        return stats;
+    }
+
+    private NoteStatsDO withDefaults(NoteStatsDO db) {
+        NoteStatsDO stats = new NoteStatsDO();
+        stats.setNoteId(db.getNoteId());
+        stats.setAuthorName(db.getAuthorName() == null || db.getAuthorName().isEmpty()
+                ? UNKNOWN_AUTHOR : db.getAuthorName());
+        stats.setViews(nonNull(db.getViews()));
+        stats.setLikes(nonNull(db.getLikes()));
+        stats.setFavorites(nonNull(db.getFavorites()));
+        stats.setComments(nonNull(db.getComments()));
+        stats.setLastActivityAt(db.getLastActivityAt());
+        stats.setUpdatedAt(db.getUpdatedAt() != null ? db.getUpdatedAt() : db.getLastActivityAt());
+        stats.setVersion(nonNull(db.getVersion()));
+        return stats;
+    }
+
+    private NoteStatsDO defaultStats(Long noteId) {
+        NoteStatsDO stats = new NoteStatsDO();
+        stats.setNoteId(noteId);
+        stats.setAuthorName("");
+        stats.setViews(0L);
+        stats.setLikes(0L);
+        stats.setFavorites(0L);
+        stats.setComments(0L);
+        stats.setVersion(0L);
+        return stats;
+    }
+
+    private long nonNull(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private long parseLong(Object o) {
+        if (o == null) return 0L;
+        try { return Math.max(0, Long.parseLong(o.toString())); } catch (Exception ex) { return 0L; }
+    }
+
+    private LocalDateTime parseDateTime(Object o) {
+        if (o == null || o.toString().isEmpty()) return null;
+        try { return LocalDateTime.parse(o.toString()); } catch (Exception ex) { return null; }
+    }
+}
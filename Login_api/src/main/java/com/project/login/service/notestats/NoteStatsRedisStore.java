@@ -0,0 +1,655 @@
+package com.project.login.service.notestats;
+
+import com.project.login.model.dataobject.NoteStatsDO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 笔记统计在 Redis 中的存储
+ * 两种模式（note-stats.storage.mode）：
+ * 1. hash：每篇笔记一个 note_stats:{noteId} Hash，7 个字符串字段（原有格式）
+ * 2. bucketed：每 bucket-size 篇笔记共用一个 note_stats_b:{noteId / bucket-size} 小 Hash，
+ *    字段为 "{偏移}{代号}"、值全部为整数（活跃时间存 epoch 秒），作者名单独放在 note_author:{桶号}；
+ *    小 Hash 保持 listpack 编码，省去每篇笔记一个 key 的固定开销
+ * bucketed 模式下读取未命中时回退读取旧 Hash（双读），写入未命中时以旧 Hash 为种子迁移，
+ * 剩余的旧 Hash 可通过 {@link #migrateLegacy} 批量迁移
+ * 对外统一使用旧 Hash 的字段名（authorName, views, likes, favorites, comments, last_activity_at, version）
+ */
+@Slf4j
+@Component
+public class NoteStatsRedisStore {
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${note-stats.storage.mode:hash}")
+    private String mode;
+
+    /** 每个桶的笔记数；每篇笔记 6 个字段，需满足 bucket-size * 6 <= hash-max-listpack-entries */
+    @Value("${note-stats.storage.bucket-size:16}")
+    private int bucketSize;
+
+    public static final String LEGACY_KEY_PREFIX = "note_stats:";
+    /** 统计有变化、等待落库的 noteId 集合 */
+    public static final String DIRTY_KEY = "note_stats_dirty";
+    private static final String BUCKET_KEY_PREFIX = "note_stats_b:";
+    private static final String AUTHOR_KEY_PREFIX = "note_author:";
+
+    private static final long STATS_TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+    private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
+
+    /** 旧字段名 → 桶内字段代号；顺序即 HMGET 的顺序 */
+    private static final Map<String, String> FIELD_CODES = new LinkedHashMap<>();
+    static {
+        FIELD_CODES.put("views", "v");
+        FIELD_CODES.put("likes", "l");
+        FIELD_CODES.put("favorites", "f");
+        FIELD_CODES.put("comments", "c");
+        FIELD_CODES.put("last_activity_at", "t");
+        FIELD_CODES.put("version", "r");
+    }
+    private static final int FIELDS_PER_NOTE = FIELD_CODES.size();
+    private static final String AUTHOR_CODE = "a";
+
+    /**
+     * hash 模式
+     * KEYS[1] = note_stats:{noteId}，KEYS[2] = 脏集合
+     * ARGV = now, ttlSeconds, noteId, n, n 个 field/delta 对 [, 种子 field/value 对 ...]
+     * key 不存在且没有种子时返回 0（未命中）；否则逐个自增并把负数归零、写活跃时间、登记脏集合，
+     * 返回 1（已存在）或 2（本次写入了种子）；n = 0 时只写种子
+     */
+    private static final String HASH_APPLY_LUA =
+            "local key = KEYS[1]\n" +
+            "local seedFrom = 5 + 2 * tonumber(ARGV[4])\n" +
+            "local seeded = 0\n" +
+            "if redis.call('EXISTS', key) == 0 then\n" +
+            "    if #ARGV < seedFrom then\n" +
+            "        return 0\n" +
+            "    end\n" +
+            "    for i = seedFrom, #ARGV, 2 do\n" +
+            "        redis.call('HSET', key, ARGV[i], ARGV[i + 1])\n" +
+            "    end\n" +
+            "    redis.call('EXPIRE', key, tonumber(ARGV[2]))\n" +
+            "    seeded = 1\n" +
+            "end\n" +
+            "if seedFrom == 5 then\n" +
+            "    return 1 + seeded\n" +
+            "end\n" +
+            "for i = 5, seedFrom - 1, 2 do\n" +
+            "    local value = redis.call('HINCRBY', key, ARGV[i], tonumber(ARGV[i + 1]))\n" +
+            "    if value < 0 then\n" +
+            "        redis.call('HSET', key, ARGV[i], '0')\n" +
+            "    end\n" +
+            "end\n" +
+            "redis.call('HSET', key, 'last_activity_at', ARGV[1])\n" +
+            "redis.call('SADD', KEYS[2], ARGV[3])\n" +
+            "return 1 + seeded";
+
+    /**
+     * bucketed 模式
+     * KEYS[1] = note_stats_b:{桶号}，KEYS[2] = 脏集合，KEYS[3] = note_author:{桶号}
+     * ARGV = 偏移, nowEpochSeconds, ttlSeconds, noteId, n, n 个 代号/delta 对 [, 种子 代号/value 对 ...]
+     * 以 "{偏移}v" 是否存在判断命中；其余语义与返回值与 hash 模式相同
+     */
+    private static final String BUCKET_APPLY_LUA =
+            "local off = ARGV[1]\n" +
+            "local ttl = tonumber(ARGV[3])\n" +
+            "local seedFrom = 6 + 2 * tonumber(ARGV[5])\n" +
+            "local seeded = 0\n" +
+            "if redis.call('HEXISTS', KEYS[1], off .. 'v') == 0 then\n" +
+            "    if #ARGV < seedFrom then\n" +
+            "        return 0\n" +
+            "    end\n" +
+            "    for i = seedFrom, #ARGV, 2 do\n" +
+            "        if ARGV[i] == 'a' then\n" +
+            "            if ARGV[i + 1] ~= '' then\n" +
+            "                redis.call('HSET', KEYS[3], off, ARGV[i + 1])\n" +
+            "            end\n" +
+            "        else\n" +
+            "            redis.call('HSET', KEYS[1], off .. ARGV[i], ARGV[i + 1])\n" +
+            "        end\n" +
+            "    end\n" +
+            "    seeded = 1\n" +
+            "end\n" +
+            "for i = 6, seedFrom - 1, 2 do\n" +
+            "    local value = redis.call('HINCRBY', KEYS[1], off .. ARGV[i], tonumber(ARGV[i + 1]))\n" +
+            "    if value < 0 then\n" +
+            "        redis.call('HSET', KEYS[1], off .. ARGV[i], '0')\n" +
+            "    end\n" +
+            "end\n" +
+            "if seedFrom > 6 then\n" +
+            "    redis.call('HSET', KEYS[1], off .. 't', ARGV[2])\n" +
+            "    redis.call('SADD', KEYS[2], ARGV[4])\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ttl)\n" +
+            "redis.call('EXPIRE', KEYS[3], ttl)\n" +
+            "return 1 + seeded";
+
+    private static final byte[] HASH_APPLY_SCRIPT = HASH_APPLY_LUA.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BUCKET_APPLY_SCRIPT = BUCKET_APPLY_LUA.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 迁移结果
+     * @param scanned 扫描到的旧 Hash 数量
+     * @param migrated 写入桶的数量（桶内已有数据的只删除旧 Hash）
+     */
+    public record MigrationResult(long scanned, long migrated) {}
+
+    private final AtomicLong readHits = new AtomicLong();
+    private final AtomicLong readMisses = new AtomicLong();
+
+    /**
+     * 内存对比报告（基于抽样的 MEMORY USAGE）
+     * @param bucketEncodings 抽样桶的编码分布，出现 hashtable 说明 bucket-size 超过了 hash-max-listpack-entries
+     */
+    public record MemoryReport(String mode, int bucketSize,
+                               int legacyKeysSampled, double legacyBytesPerNote,
+                               int bucketKeysSampled, double bucketBytesPerNote, double authorBytesPerNote,
+                               Map<String, Integer> bucketEncodings) {}
+
+    public NoteStatsRedisStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public boolean isBucketed() {
+        return "bucketed".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 一次 pipeline 批量读取；bucketed 模式下未命中的再用一次 pipeline 读取旧 Hash
+     * @return 与 noteIds 一一对应，未命中为空 Map
+     */
+    public List<Map<String, String>> readAll(List<Long> noteIds) {
+        if (noteIds.isEmpty()) return List.of();
+        List<Map<String, String>> hashes = isBucketed() ? readBuckets(noteIds) : readLegacy(noteIds);
+        long hits = hashes.stream().filter(hash -> !hash.isEmpty()).count();
+        readHits.addAndGet(hits);
+        readMisses.addAndGet(hashes.size() - hits);
+        return hashes;
+    }
+
+    /** 累计读取命中数（按笔记计） */
+    public long getReadHits() {
+        return readHits.get();
+    }
+
+    /** 累计读取未命中数（按笔记计） */
+    public long getReadMisses() {
+        return readMisses.get();
+    }
+
+    private List<Map<String, String>> readBuckets(List<Long> noteIds) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long noteId : noteIds) {
+                    String off = offsetOf(noteId);
+                    List<Object> fields = new ArrayList<>(FIELDS_PER_NOTE);
+                    FIELD_CODES.values().forEach(code -> fields.add(off + code));
+                    ops.opsForHash().multiGet(bucketKeyOf(noteId), fields);
+                    ops.opsForHash().get(authorKeyOf(noteId), off);
+                }
+                return null;
+            }
+        });
+
+        List<Map<String, String>> hashes = new ArrayList<>(noteIds.size());
+        List<Integer> missedIndexes = new ArrayList<>();
+        for (int i = 0; i < noteIds.size(); i++) {
+            Object values = 2 * i < results.size() ? results.get(2 * i) : null;
+            Object author = 2 * i + 1 < results.size() ? results.get(2 * i + 1) : null;
+            Map<String, String> hash = fromBucket(values, author);
+            if (hash.isEmpty()) missedIndexes.add(i);
+            hashes.add(hash);
+        }
+
+        // 双读：桶未命中的回退读取旧 Hash
+        if (!missedIndexes.isEmpty()) {
+            List<Long> missed = missedIndexes.stream().map(noteIds::get).toList();
+            List<Map<String, String>> legacy = readLegacy(missed);
+            for (int j = 0; j < missedIndexes.size(); j++) {
+                hashes.set(missedIndexes.get(j), legacy.get(j));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * 每篇笔记一次脚本调用，全部放进同一个 pipeline
+     * @param deltas noteId → (field → delta)
+     * @param seeds 未命中时写入的种子；为空时未命中的笔记不写入，由返回值带回
+     * @return Redis 未命中的 noteId
+     */
+    public List<Long> applyDeltas(List<Long> noteIds, Map<Long, Map<String, Long>> deltas,
+                                  Map<Long, NoteStatsDO> seeds) {
+        List<Long> codes = runApplyScripts(noteIds, deltas, seeds);
+        List<Long> missed = new ArrayList<>();
+        for (int i = 0; i < noteIds.size(); i++) {
+            if (codes.get(i) == 0L) missed.add(noteIds.get(i));
+        }
+        return missed;
+    }
+
+    /**
+     * 只在 Redis 中还没有该笔记时写入（预热与读取回填用），一次 pipeline；已有的数据不会被快照覆盖。
+     * bucketed 模式下优先以旧 Hash 为准并顺带迁移
+     * @return 本次写入的笔记数
+     */
+    public int seedIfAbsent(List<NoteStatsDO> stats) {
+        if (stats.isEmpty()) return 0;
+        List<Long> noteIds = stats.stream().map(NoteStatsDO::getNoteId).toList();
+        Map<Long, NoteStatsDO> seeds = new HashMap<>();
+        stats.forEach(db -> seeds.put(db.getNoteId(), db));
+        Map<Long, NoteStatsDO> legacy = loadLegacySeeds(noteIds);
+        seeds.putAll(legacy);
+
+        List<Long> codes = runApplyScripts(noteIds, Map.of(), seeds);
+        deleteLegacy(legacy.keySet());
+        return (int) codes.stream().filter(code -> code == 2L).count();
+    }
+
+    /**
+     * 当前存储格式中还没有统计的 noteId（bucketed 模式下只看桶，旧 Hash 不算），一次 pipeline，不计入读取命中率
+     */
+    public List<Long> findMissing(List<Long> noteIds) {
+        if (noteIds.isEmpty()) return List.of();
+        boolean bucketed = isBucketed();
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long noteId : noteIds) {
+                    if (bucketed) {
+                        ops.opsForHash().hasKey(bucketKeyOf(noteId), offsetOf(noteId) + "v");
+                    } else {
+                        ops.hasKey(LEGACY_KEY_PREFIX + noteId);
+                    }
+                }
+                return null;
+            }
+        });
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < noteIds.size(); i++) {
+            if (i >= results.size() || !Boolean.TRUE.equals(results.get(i))) {
+                missing.add(noteIds.get(i));
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 统计 Redis 中已有统计的笔记数，一次 pipeline，只判断存在、不计入读取命中率；
+     * bucketed 模式下尚未迁移的旧 Hash 也算已缓存
+     */
+    public int countCached(List<Long> noteIds) {
+        if (noteIds.isEmpty()) return 0;
+        boolean bucketed = isBucketed();
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long noteId : noteIds) {
+                    if (bucketed) {
+                        ops.opsForHash().hasKey(bucketKeyOf(noteId), offsetOf(noteId) + "v");
+                    }
+                    ops.hasKey(LEGACY_KEY_PREFIX + noteId);
+                }
+                return null;
+            }
+        });
+        int stride = bucketed ? 2 : 1;
+        int cached = 0;
+        for (int i = 0; i < noteIds.size(); i++) {
+            for (int j = i * stride; j < (i + 1) * stride && j < results.size(); j++) {
+                if (Boolean.TRUE.equals(results.get(j))) {
+                    cached++;
+                    break;
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @return 每篇笔记的脚本返回值：0 未命中，1 已存在，2 写入了种子
+     */
+    private List<Long> runApplyScripts(List<Long> noteIds, Map<Long, Map<String, Long>> deltas,
+                                       Map<Long, NoteStatsDO> seeds) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long noteId : noteIds) {
+                Map<String, Long> fieldDeltas = deltas.getOrDefault(noteId, Map.of());
+                NoteStatsDO seed = seeds.get(noteId);
+                List<String> keysAndArgs = new ArrayList<>();
+                byte[] script;
+                if (isBucketed()) {
+                    script = BUCKET_APPLY_SCRIPT;
+                    keysAndArgs.add(bucketKeyOf(noteId));
+                    keysAndArgs.add(DIRTY_KEY);
+                    keysAndArgs.add(authorKeyOf(noteId));
+                    keysAndArgs.add(offsetOf(noteId));
+                    keysAndArgs.add(String.valueOf(toEpochSeconds(now)));
+                    keysAndArgs.add(String.valueOf(STATS_TTL_SECONDS));
+                    keysAndArgs.add(String.valueOf(noteId));
+                    keysAndArgs.add(String.valueOf(fieldDeltas.size()));
+                    fieldDeltas.forEach((field, delta) -> {
+                        keysAndArgs.add(FIELD_CODES.get(field));
+                        keysAndArgs.add(String.valueOf(delta));
+                    });
+                    if (seed != null) {
+                        toBucketFields(seed).forEach((code, value) -> {
+                            keysAndArgs.add(code);
+                            keysAndArgs.add(value);
+                        });
+                        keysAndArgs.add(AUTHOR_CODE);
+                        keysAndArgs.add(seed.getAuthorName() == null ? "" : seed.getAuthorName());
+                    }
+                } else {
+                    script = HASH_APPLY_SCRIPT;
+                    keysAndArgs.add(LEGACY_KEY_PREFIX + noteId);
+                    keysAndArgs.add(DIRTY_KEY);
+                    keysAndArgs.add(now.toString());
+                    keysAndArgs.add(String.valueOf(STATS_TTL_SECONDS));
+                    keysAndArgs.add(String.valueOf(noteId));
+                    keysAndArgs.add(String.valueOf(fieldDeltas.size()));
+                    fieldDeltas.forEach((field, delta) -> {
+                        keysAndArgs.add(field);
+                        keysAndArgs.add(String.valueOf(delta));
+                    });
+                    if (seed != null) {
+                        toLegacyHash(seed).forEach((k, v) -> {
+                            keysAndArgs.add(k);
+                            keysAndArgs.add(v);
+                        });
+                    }
+                }
+                byte[][] raw = keysAndArgs.stream().map(STRING_SERIALIZER::serialize).toArray(byte[][]::new);
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, isBucketed() ? 3 : 2, raw);
+            }
+            return null;
+        }, STRING_SERIALIZER);
+
+        List<Long> codes = new ArrayList<>(noteIds.size());
+        for (int i = 0; i < noteIds.size(); i++) {
+            Object result = i < results.size() ? results.get(i) : null;
+            codes.add(result instanceof Number n ? n.longValue() : 0L);
+        }
+        return codes;
+    }
+
+    /**
+     * bucketed 模式下从旧 Hash 读取种子（双读期写入未命中时使用）；hash 模式返回空
+     */
+    public Map<Long, NoteStatsDO> loadLegacySeeds(List<Long> noteIds) {
+        Map<Long, NoteStatsDO> seeds = new HashMap<>();
+        if (!isBucketed() || noteIds.isEmpty()) return seeds;
+        List<Map<String, String>> legacy = readLegacy(noteIds);
+        for (int i = 0; i < noteIds.size(); i++) {
+            if (!legacy.get(i).isEmpty()) {
+                seeds.put(noteIds.get(i), toStats(noteIds.get(i), legacy.get(i)));
+            }
+        }
+        return seeds;
+    }
+
+    /**
+     * 桶已写入后删除对应的旧 Hash；hash 模式下不做任何事
+     */
+    public void deleteLegacy(Collection<Long> noteIds) {
+        if (!isBucketed() || noteIds.isEmpty()) return;
+        redisTemplate.delete(noteIds.stream().map(id -> LEGACY_KEY_PREFIX + id).toList());
+    }
+
+    /**
+     * 把剩余的旧 Hash 批量迁移到桶：SCAN 一批 → pipeline 读取 → 脚本只在桶内不存在时写入 → 删除旧 Hash
+     */
+    public MigrationResult migrateLegacy(int batchSize) {
+        if (!isBucketed()) {
+            throw new IllegalStateException("note-stats.storage.mode 不是 bucketed，无需迁移");
+        }
+        long scanned = 0;
+        long migrated = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(LEGACY_KEY_PREFIX + "*").count(batchSize).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<Long> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                Long noteId = parseNoteId(cursor.next());
+                if (noteId == null) continue;
+                batch.add(noteId);
+                if (batch.size() >= batchSize) {
+                    scanned += batch.size();
+                    migrated += migrateBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                scanned += batch.size();
+                migrated += migrateBatch(batch);
+            }
+        }
+        log.info("note_stats 旧 Hash 迁移完成: scanned={}, migrated={}", scanned, migrated);
+        return new MigrationResult(scanned, migrated);
+    }
+
+    private long migrateBatch(List<Long> noteIds) {
+        Map<Long, NoteStatsDO> seeds = loadLegacySeeds(noteIds);
+        if (seeds.isEmpty()) return 0;
+        // 不带增量、只带种子：桶内已有数据的笔记不会被覆盖
+        seedIfAbsent(new ArrayList<>(seeds.values()));
+        return seeds.size();
+    }
+
+    /**
+     * 抽样对比两种格式的每篇笔记内存占用
+     */
+    public MemoryReport memoryReport(int sampleSize) {
+        List<String> legacyKeys = sampleKeys(LEGACY_KEY_PREFIX + "*", sampleSize);
+        long legacyBytes = 0;
+        int legacyNotes = 0;
+        for (String key : legacyKeys) {
+            if (parseNoteId(key) == null) continue;
+            legacyBytes += memoryUsage(key);
+            legacyNotes++;
+        }
+
+        List<String> bucketKeys = sampleKeys(BUCKET_KEY_PREFIX + "*", sampleSize);
+        long bucketBytes = 0;
+        long bucketNotes = 0;
+        Map<String, Integer> encodings = new TreeMap<>();
+        for (String key : bucketKeys) {
+            bucketBytes += memoryUsage(key);
+            Long fields = redisTemplate.opsForHash().size(key);
+            bucketNotes += (fields == null ? 0 : fields) / FIELDS_PER_NOTE;
+            encodings.merge(encodingOf(key), 1, Integer::sum);
+        }
+
+        List<String> authorKeys = sampleKeys(AUTHOR_KEY_PREFIX + "*", sampleSize);
+        long authorBytes = 0;
+        long authorNotes = 0;
+        for (String key : authorKeys) {
+            authorBytes += memoryUsage(key);
+            Long fields = redisTemplate.opsForHash().size(key);
+            authorNotes += fields == null ? 0 : fields;
+        }
+
+        MemoryReport report = new MemoryReport(isBucketed() ? "bucketed" : "hash", bucketSize,
+                legacyNotes, legacyNotes == 0 ? 0 : (double) legacyBytes / legacyNotes,
+                bucketKeys.size(), bucketNotes == 0 ? 0 : (double) bucketBytes / bucketNotes,
+                authorNotes == 0 ? 0 : (double) authorBytes / authorNotes,
+                encodings);
+        log.info("note_stats 内存对比: {}", report);
+        return report;
+    }
+
+    // ---------- 内部工具 ----------
+
+    private List<Map<String, String>> readLegacy(List<Long> noteIds) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long noteId : noteIds) {
+                    ops.opsForHash().entries(LEGACY_KEY_PREFIX + noteId);
+                }
+                return null;
+            }
+        });
+        List<Map<String, String>> hashes = new ArrayList<>(noteIds.size());
+        for (int i = 0; i < noteIds.size(); i++) {
+            Object value = i < results.size() ? results.get(i) : null;
+            Map<String, String> hash = new HashMap<>();
+            if (value instanceof Map<?, ?> map) {
+                map.forEach((k, v) -> hash.put(String.valueOf(k), v == null ? null : String.valueOf(v)));
+            }
+            hashes.add(hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * HMGET 结果（与 FIELD_CODES 顺序一致）→ 旧字段名
+     */
+    private Map<String, String> fromBucket(Object values, Object author) {
+        Map<String, String> hash = new HashMap<>();
+        if (!(values instanceof List<?> list) || list.isEmpty() || list.get(0) == null) {
+            return hash;
+        }
+        int i = 0;
+        for (String field : FIELD_CODES.keySet()) {
+            Object value = i < list.size() ? list.get(i) : null;
+            i++;
+            if (value == null) continue;
+            if ("last_activity_at".equals(field)) {
+                hash.put(field, fromEpochSeconds(value.toString()));
+            } else {
+                hash.put(field, value.toString());
+            }
+        }
+        hash.put("authorName", author == null ? "" : author.toString());
+        return hash;
+    }
+
+    private Map<String, String> toBucketFields(NoteStatsDO db) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("v", String.valueOf(nonNull(db.getViews())));
+        fields.put("l", String.valueOf(nonNull(db.getLikes())));
+        fields.put("f", String.valueOf(nonNull(db.getFavorites())));
+        fields.put("c", String.valueOf(nonNull(db.getComments())));
+        fields.put("t", String.valueOf(toEpochSeconds(db.getLastActivityAt() == null
+                ? LocalDateTime.now() : db.getLastActivityAt())));
+        fields.put("r", String.valueOf(nonNull(db.getVersion())));
+        return fields;
+    }
+
+    public static Map<String, String> toLegacyHash(NoteStatsDO db) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        hash.put("authorName", db.getAuthorName() == null ? "" : db.getAuthorName());
+        hash.put("views", String.valueOf(nonNull(db.getViews())));
+        hash.put("likes", String.valueOf(nonNull(db.getLikes())));
+        hash.put("favorites", String.valueOf(nonNull(db.getFavorites())));
+        hash.put("comments", String.valueOf(nonNull(db.getComments())));
+        hash.put("last_activity_at", db.getLastActivityAt() == null
+                ? LocalDateTime.now().toString() : db.getLastActivityAt().toString());
+        hash.put("version", String.valueOf(nonNull(db.getVersion())));
+        return hash;
+    }
+
+    private NoteStatsDO toStats(Long noteId, Map<String, String> hash) {
+        NoteStatsDO stats = new NoteStatsDO();
+        stats.setNoteId(noteId);
+        stats.setAuthorName(Objects.toString(hash.get("authorName"), ""));
+        stats.setViews(parseLong(hash.get("views")));
+        stats.setLikes(parseLong(hash.get("likes")));
+        stats.setFavorites(parseLong(hash.get("favorites")));
+        stats.setComments(parseLong(hash.get("comments")));
+        try {
+            stats.setLastActivityAt(LocalDateTime.parse(hash.get("last_activity_at")));
+        } catch (Exception e) {
+            stats.setLastActivityAt(LocalDateTime.now());
+        }
+        stats.setVersion(parseLong(hash.get("version")));
+        return stats;
+    }
+
+    private String bucketKeyOf(Long noteId) {
+        return BUCKET_KEY_PREFIX + (noteId / bucketSize);
+    }
+
+    private String authorKeyOf(Long noteId) {
+        return AUTHOR_KEY_PREFIX + (noteId / bucketSize);
+    }
+
+    private String offsetOf(Long noteId) {
+        return String.valueOf(noteId % bucketSize);
+    }
+
+    private static long toEpochSeconds(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static String fromEpochSeconds(String seconds) {
+        try {
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(Long.parseLong(seconds)), ZoneId.systemDefault()).toString();
+        } catch (Exception e) {
+            return LocalDateTime.now().toString();
+        }
+    }
+
+    private static long nonNull(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static long parseLong(String value) {
+        try { return Long.parseLong(value); } catch (Exception e) { return 0L; }
+    }
+
+    /** 只接受 note_stats:{数字}，排除其它同前缀的 key */
+    private static Long parseNoteId(String key) {
+        try {
+            return Long.parseLong(key.substring(LEGACY_KEY_PREFIX.length()));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private List<String> sampleKeys(String pattern, int sampleSize) {
+        List<String> keys = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(Math.max(sampleSize, 100)).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext() && keys.size() < sampleSize) {
+                keys.add(cursor.next());
+            }
+        }
+        return keys;
+    }
+
+    private long memoryUsage(String key) {
+        Object usage = redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8),
+                        key.getBytes(StandardCharsets.UTF_8)));
+        return usage instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private String encodingOf(String key) {
+        String encoding = redisTemplate.execute((RedisCallback<String>) connection ->
+                connection.keyCommands().encodingOf(key.getBytes(StandardCharsets.UTF_8)).raw());
+        return encoding == null ? "unknown" : encoding;
+    }
+}
@@ -3,17 +3,17 @@ package com.project.login.service.notestats;
 import com.project.login.mapper.NoteStatsMapper;
 import com.project.login.model.dataobject.NoteStatsDO;
 import com.project.login.model.vo.NoteStatsVO;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.data.redis.core.HashOperations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -23,61 +23,147 @@ public class NoteStatsService {
     private final RedisTemplate<String, Object> redisTemplate;
     private final NoteStatsMapper noteStatsMapper;
     private final RabbitTemplate rabbitTemplate;
+    private final NoteStatsAccumulator accumulator;
+    private final NoteStatsRedisStore statsStore;
+    private final NoteActivityService activityService;
 
-    private static final String REDIS_KEY_PREFIX = "note_stats:";
     private static final String MQ_QUEUE = "note.redis.queue";
+    private static final String DIRTY_KEY = NoteStatsRedisStore.DIRTY_KEY;
+    private static final int FLUSH_CHUNK_SIZE = 500;
 
     private static final Set<String> ALLOWED_FIELDS =
             Set.of("views", "likes", "favorites", "comments");
 
     /**
-     * 高频写入（写 Redis 总量）。若 Redis 无数据则从 DB 读并回写（包含 version）。
+     * 刷新时在写锁外准备好的种子
+     * @param seeds Redis 未命中时写入的统计（旧格式 Hash，或 DB 中的行，DB 没有时初始化一行）
+     * @param rejected 笔记不存在（外键约束）等被拒绝的 noteId，增量记日志后丢弃
      */
-    public NoteStatsVO changeField(Long noteId, String field, long delta) {
+    private record FlushSeeds(Map<Long, NoteStatsDO> seeds, Set<Long> rejected) {}
+
+    @PostConstruct
+    public void startAccumulator() {
+        accumulator.start(new NoteStatsAccumulator.Sink<FlushSeeds>() {
+            @Override
+            public FlushSeeds prepare(Set<Long> noteIds) {
+                return prepareSeeds(noteIds);
+            }
+
+            @Override
+            public Set<Long> write(Map<Long, Map<String, Long>> batch, FlushSeeds prepared) {
+                return applyDeltas(batch, prepared);
+            }
+
+            @Override
+            public void afterWrite(Map<Long, Map<String, Long>> written, FlushSeeds prepared) {
+                afterApply(written, prepared);
+            }
+        });
+    }
+
+    /**
+     * 高频写入：只累加到本地 LongAdder，由 {@link NoteStatsAccumulator} 每个周期合并后写 Redis。
+     * 不返回统计值，避免每次自增都读一次 Redis；需要最新值时调用 {@link #getStats}
+     */
+    public void changeField(Long noteId, String field, long delta) {
         if (noteId == null || noteId < 1) {
             log.warn("Invalid noteId={}, skip changeField", noteId);
-            return emptyStats(noteId);
+            return;
         }
 
         if (!ALLOWED_FIELDS.contains(field)) {
             log.warn("Invalid field={} for noteId={}, skip", field, noteId);
-            return getStats(noteId);
+            return;
         }
 
-        String key = REDIS_KEY_PREFIX + noteId;
-        HashOperations<String, Object, Object> ops = redisTemplate.opsForHash();
-
-        // === Redis 初始化 ===
-        initRedisIfNeeded(noteId, ops, key);
+        accumulator.add(noteId, field, delta);
+    }
 
-        // === 原子增量 ===
-        Long newValue = ops.increment(key, field, delta);
-        
-        // 防止负数：如果操作后值小于0，则设置为0
-        if (newValue != null && newValue < 0) {
-            ops.put(key, field, "0");
-            newValue = 0L;
+    /**
+     * 写锁外：一次 pipeline 找出 Redis 中还没有的笔记，先取旧格式 Hash（bucketed 双读期），
+     * 再批量从 DB 取出（不存在则初始化）作为种子。DB 暂时不可用的笔记没有种子，写入时未命中，下个周期重试
+     */
+    private FlushSeeds prepareSeeds(Set<Long> noteIds) {
+        List<Long> ids = new ArrayList<>(noteIds);
+        List<Long> missed = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += FLUSH_CHUNK_SIZE) {
+            missed.addAll(statsStore.findMissing(ids.subList(i, Math.min(i + FLUSH_CHUNK_SIZE, ids.size()))));
+        }
+        Map<Long, NoteStatsDO> seeds = new HashMap<>();
+        Set<Long> rejected = new HashSet<>();
+        if (missed.isEmpty()) return new FlushSeeds(seeds, rejected);
+
+        seeds.putAll(statsStore.loadLegacySeeds(missed));
+        List<Long> fromDB = missed.stream().filter(id -> !seeds.containsKey(id)).toList();
+        if (!fromDB.isEmpty()) {
+            seeds.putAll(loadOrInitFromDB(fromDB, rejected));
         }
-        
-        ops.put(key, "last_activity_at", LocalDateTime.now().toString());
+        return new FlushSeeds(seeds, rejected);
+    }
 
-        // 返回当前值
-        Map<Object, Object> map = ops.entries(key);
-        return toVO(noteId, map);
+    /**
+     * 写锁内：把一个周期内合并后的增量写入 Redis，每篇笔记一次脚本调用，按块放进同一个 pipeline。
+     * 种子随脚本下发，脚本内只在仍未命中时写入，避免覆盖并发写入的增量；这里不访问 DB
+     * 失败按笔记隔离：Redis 失败的块、未命中且没有种子的笔记返回给调用方重试；被拒绝的笔记不写入，增量丢弃
+     * @param deltas noteId → (field → delta)
+     * @param prepared 准备失败时为 null，此时未命中的笔记全部重试
+     * @return 未写入、需要下个周期重试的 noteId
+     */
+    private Set<Long> applyDeltas(Map<Long, Map<String, Long>> deltas, FlushSeeds prepared) {
+        Map<Long, NoteStatsDO> seeds = prepared == null ? Map.of() : prepared.seeds();
+        Set<Long> rejected = prepared == null ? Set.of() : prepared.rejected();
+        List<Long> noteIds = deltas.keySet().stream().filter(id -> !rejected.contains(id)).toList();
+        Set<Long> failed = new HashSet<>();
+        for (int i = 0; i < noteIds.size(); i += FLUSH_CHUNK_SIZE) {
+            List<Long> chunk = noteIds.subList(i, Math.min(i + FLUSH_CHUNK_SIZE, noteIds.size()));
+            try {
+                failed.addAll(statsStore.applyDeltas(chunk, deltas, seeds));
+            } catch (Exception e) {
+                log.error("笔记统计增量写入 Redis 失败, size={}", chunk.size(), e);
+                failed.addAll(chunk);
+            }
+        }
+        return failed;
     }
 
     /**
-     * 如果 Redis 中没有数据，则从 DB 初始化回写 Redis
+     * 写锁外：删除已迁移到桶的旧 Hash；写入成功的笔记计入当前小时的活跃度桶（见 {@link NoteActivityService}），
+     * 失败只影响趋势数据，不重试
      */
-    private void initRedisIfNeeded(Long noteId, HashOperations<String, Object, Object> ops, String key) {
-        if (redisTemplate.hasKey(key) && ops.size(key) > 0) {
-            return;
+    private void afterApply(Map<Long, Map<String, Long>> written, FlushSeeds prepared) {
+        List<Long> applied = written.keySet().stream()
+                .filter(id -> prepared == null || !prepared.rejected().contains(id))
+                .toList();
+        if (applied.isEmpty()) return;
+        if (prepared != null) {
+            List<Long> migrated = applied.stream().filter(prepared.seeds()::containsKey).toList();
+            try {
+                statsStore.deleteLegacy(migrated);
+            } catch (Exception e) {
+                log.warn("删除旧格式笔记统计失败, size={}", migrated.size(), e);
+            }
+        }
+        try {
+            activityService.record(applied, written, LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("记录笔记活跃度小时桶失败, size={}", applied.size(), e);
         }
+    }
 
-        NoteStatsDO db = noteStatsMapper.getById(noteId);
-        if (db == null) {
+    /**
+     * 批量从 DB 取出统计，不存在的逐篇初始化；初始化失败只影响该笔记：
+     * 笔记不存在（外键约束）的加入 rejected，增量丢弃；其余异常不给种子，写入时未命中，下个周期重试
+     * @return 可作为种子的统计，不含失败和被拒绝的笔记
+     */
+    private Map<Long, NoteStatsDO> loadOrInitFromDB(List<Long> noteIds, Set<Long> rejected) {
+        Map<Long, NoteStatsDO> result = new HashMap<>();
+        for (NoteStatsDO db : noteStatsMapper.getByIds(noteIds)) {
+            result.put(db.getNoteId(), db);
+        }
+        for (Long noteId : noteIds) {
+            if (result.containsKey(noteId)) continue;
             // DB 初始化（version=0）
-            db = NoteStatsDO.builder()
+            NoteStatsDO db = NoteStatsDO.builder()
                     .noteId(noteId)
                     .authorName("")
                     .views(0L)
@@ -87,54 +173,64 @@ public class NoteStatsService {
                     .lastActivityAt(LocalDateTime.now())
                     .version(0L)
                     .build();
-            noteStatsMapper.insert(db);
+            try {
+                noteStatsMapper.insert(db);
+            } catch (DuplicateKeyException e) {
+                // 并发落库已插入，以库中数据为准
+                NoteStatsDO existing = noteStatsMapper.getById(noteId);
+                if (existing != null) db = existing;
+            } catch (DataIntegrityViolationException e) {
+                log.warn("笔记不存在或统计被拒绝，丢弃增量: noteId={}, reason={}", noteId, e.getMostSpecificCause().getMessage());
+                rejected.add(noteId);
+                continue;
+            } catch (Exception e) {
+                log.error("初始化笔记统计失败，下个周期重试: noteId={}", noteId, e);
+                continue;
+            }
+            result.put(noteId, db);
         }
-
-        writeStatsToRedis(key, ops, db);
+        return result;
     }
 
     /**
-     * 写入 Redis（安全版，Hash 的 value 全部转为 String）
-     */
-    private void writeStatsToRedis(String key, HashOperations<String, Object, Object> ops, NoteStatsDO db) {
-        // 将所有字段值统一转成 String，保证 StringRedisSerializer 不会报错
-        ops.put(key, "authorName", db.getAuthorName());
-        ops.put(key, "views", String.valueOf(db.getViews()));
-        ops.put(key, "likes", String.valueOf(db.getLikes()));
-        ops.put(key, "favorites", String.valueOf(db.getFavorites()));
-        ops.put(key, "comments", String.valueOf(db.getComments()));
-        ops.put(key, "last_activity_at", db.getLastActivityAt().toString());
-        ops.put(key, "version", String.valueOf(db.getVersion()));
-
-        // 设置过期时间
-        redisTemplate.expire(key, 7, TimeUnit.DAYS);
-    }
-
-
-    /**
-     * 获取 Redis 状态
+     * 获取 Redis 状态，并合并本地尚未写入 Redis 的增量；不含独立访客数（PFCOUNT 只在详情接口上读取）
      */
     public NoteStatsVO getStats(Long noteId) {
         if (noteId == null || noteId < 1) {
             return emptyStats(noteId);
         }
 
-        String key = REDIS_KEY_PREFIX + noteId;
-        HashOperations<String, Object, Object> ops = redisTemplate.opsForHash();
-        Map<Object, Object> map = ops.entries(key);
-
-        if (map.isEmpty()) {
-            NoteStatsDO db = noteStatsMapper.getById(noteId);
-            if (db == null) return emptyStats(noteId);
+        NoteStatsVO vo = accumulator.readConsistent(() -> readMerged(noteId));
+        if (vo != null) return vo;
 
-            writeStatsToRedis(key, ops, db);
-            map = ops.entries(key);
+        // Redis 未命中：在 readConsistent 之外回源 DB 并回填（只在仍未命中时写入，不覆盖并发刷新写入的增量），再读一次
+        NoteStatsDO db = noteStatsMapper.getById(noteId);
+        if (db == null) {
+            return accumulator.readConsistent(() -> mergePending(emptyStats(noteId)));
         }
+        statsStore.seedIfAbsent(List.of(db));
+        vo = accumulator.readConsistent(() -> readMerged(noteId));
+        if (vo != null) return vo;
+        return accumulator.readConsistent(() -> mergePending(toVO(noteId, NoteStatsRedisStore.toLegacyHash(db))));
+    }
 
-        return toVO(noteId, map);
+    // Redis + 本地未写入的增量，由 readConsistent 保证两者之间没有刷新；只读，Redis 未命中时返回 null
+    private NoteStatsVO readMerged(Long noteId) {
+        Map<String, String> map = statsStore.readAll(List.of(noteId)).get(0);
+        return map.isEmpty() ? null : mergePending(toVO(noteId, map));
     }
 
-    private NoteStatsVO toVO(Long noteId, Map<Object, Object> map) {
+    private NoteStatsVO mergePending(NoteStatsVO vo) {
+        Map<String, Long> pending = accumulator.pendingDeltas(vo.getNoteId(), ALLOWED_FIELDS);
+        if (pending.isEmpty()) return vo;
+        vo.setViews(Math.max(0, vo.getViews() + pending.getOrDefault("views", 0L)));
+        vo.setLikes(Math.max(0, vo.getLikes() + pending.getOrDefault("likes", 0L)));
+        vo.setFavorites(Math.max(0, vo.getFavorites() + pending.getOrDefault("favorites", 0L)));
+        vo.setComments(Math.max(0, vo.getComments() + pending.getOrDefault("comments", 0L)));
+        return vo;
+    }
+
+    private NoteStatsVO toVO(Long noteId, Map<String, String> map) {
         NoteStatsVO vo = new NoteStatsVO();
         vo.setNoteId(noteId);
         vo.setAuthorName(Objects.toString(map.get("authorName"), ""));
@@ -156,6 +252,7 @@ public class NoteStatsService {
         vo.setNoteId(noteId);
         vo.setAuthorName("");
         vo.setViews(0L);
+        vo.setUniqueViewers(0L);
         vo.setLikes(0L);
         vo.setFavorites(0L);
         vo.setComments(0L);
@@ -164,56 +261,59 @@ public class NoteStatsService {
 
     /**
      * Flush Redis → MQ
+     * 只处理脏集合中的 noteId：每次 SPOP 一块，一次 pipeline 读取各自的统计，整块作为一条消息发送
      */
     public void flushToMQ() {
-        Set<String> keys = redisTemplate.keys(REDIS_KEY_PREFIX + "*");
-        if (keys == null || keys.isEmpty()) return;
+        List<Long> noteIds;
+        while (!(noteIds = popDirty()).isEmpty()) {
+            List<Long> chunk = noteIds;
+            List<Map<String, String>> hashes = statsStore.readAll(chunk);
 
-        for (String key : keys) {
-            try {
-                Long noteId = Long.parseLong(key.substring(REDIS_KEY_PREFIX.length()));
-                if (noteId < 1) {
-                    continue;
-                }
-
-                Map<Object, Object> map = redisTemplate.opsForHash().entries(key);
-                if (map.isEmpty()) continue;
+            List<Map<String, Object>> items = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, String> map = hashes.get(i);
+                if (map.isEmpty()) continue; // 已过期，变化已随上次落库
 
                 Map<String, Object> msg = new HashMap<>();
-                msg.put("note_id", noteId);
-                msg.put("authorName", map.getOrDefault("authorName", ""));
+                msg.put("note_id", chunk.get(i));
+                msg.put("authorName", Objects.toString(map.get("authorName"), ""));
                 // 确保值不为负数
                 msg.put("views", Math.max(0, parseLong(map.get("views"))));
                 msg.put("likes", Math.max(0, parseLong(map.get("likes"))));
                 msg.put("favorites", Math.max(0, parseLong(map.get("favorites"))));
                 msg.put("comments", Math.max(0, parseLong(map.get("comments"))));
-                msg.put("last_activity_at", map.getOrDefault("last_activity_at",
-                        LocalDateTime.now().toString()));
-                msg.put("version", map.getOrDefault("version", 0L));
-
-                rabbitTemplate.convertAndSend(MQ_QUEUE, msg);
+                Object lastActivity = map.get("last_activity_at");
+                msg.put("last_activity_at", lastActivity != null ? lastActivity : LocalDateTime.now().toString());
+                Object version = map.get("version");
+                msg.put("version", version != null ? version : 0L);
+                items.add(msg);
+            }
+            if (items.isEmpty()) continue;
 
+            try {
+                Map<String, Object> batch = new HashMap<>();
+                batch.put("items", items);
+                rabbitTemplate.convertAndSend(MQ_QUEUE, batch);
             } catch (Exception ex) {
-                log.error("flushToMQ error for key={}", key, ex);
+                // 发送失败，放回脏集合等待下一轮
+                log.error("flushToMQ error, chunk size={}", chunk.size(), ex);
+                // Long 经 JSON 序列化后与脚本写入的纯数字成员一致
+                redisTemplate.opsForSet().add(DIRTY_KEY, chunk.toArray());
+                return;
             }
         }
     }
 
-    /**
-     * 异步预热
-     */
-    @Async
-    public void preloadRecent(int n) {
-        List<NoteStatsDO> list = noteStatsMapper.getRecentUpdated(n);
-        HashOperations<String, Object, Object> ops = redisTemplate.opsForHash();
-
-        for (NoteStatsDO item : list) {
-            if (item.getNoteId() < 1) continue;
-
-            String key = REDIS_KEY_PREFIX + item.getNoteId();
-            writeStatsToRedis(key, ops, item);
-
-            try { Thread.sleep(30); } catch (Exception ignored) {}
+    private List<Long> popDirty() {
+        List<Object> popped = redisTemplate.opsForSet().pop(DIRTY_KEY, FLUSH_CHUNK_SIZE);
+        if (popped == null || popped.isEmpty()) {
+            return List.of();
+        }
+        List<Long> noteIds = new ArrayList<>(popped.size());
+        for (Object o : popped) {
+            long noteId = parseLong(o);
+            if (noteId > 0) noteIds.add(noteId);
         }
+        return noteIds;
     }
 }
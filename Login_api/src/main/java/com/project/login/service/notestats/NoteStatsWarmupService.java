@@ -0,0 +1,198 @@
+package com.project.login.service.notestats;
+
+import com.project.login.mapper.NoteStatsMapper;
+import com.project.login.model.dataobject.NoteStatsDO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 笔记统计缓存预热
+ * 1. 启动后（不阻塞启动）以及按需触发，按活跃时间倒序游标分页读取 note_stats
+ * 2. 每块一次 pipeline，只写入 Redis 中还没有的笔记，不会用 DB 快照覆盖尚未落库的增量
+ * 3. 按 ops-per-second 预算控制节奏（每篇笔记一次脚本调用计为一次操作），不再固定 sleep
+ * 4. 记录进度、预热集合的缓存覆盖率（写入后逐块回查 Redis 实测）以及读取命中率的变化
+ */
+@Slf4j
+@Component
+public class NoteStatsWarmupService implements ApplicationRunner {
+
+    private final NoteStatsMapper noteStatsMapper;
+    private final NoteStatsRedisStore statsStore;
+
+    @Value("${note-stats.warmup.enabled:true}")
+    private boolean enabledOnStartup;
+
+    @Value("${note-stats.warmup.limit:50000}")
+    private int defaultLimit;
+
+    @Value("${note-stats.warmup.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${note-stats.warmup.ops-per-second:5000}")
+    private int opsPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "note-stats-warmup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile WarmupProgress progress = WarmupProgress.idle();
+
+    /**
+     * 预热进度
+     * @param alreadyCached 预热前已在 Redis 中的笔记数
+     * @param seeded 本次写入的笔记数
+     * @param coverageBefore 预热集合中预热前已缓存的比例
+     * @param coverageAfter 预热集合中写入后回查仍在 Redis 中的比例
+     * @param readHitRatioBefore 预热开始前累计的读取命中率
+     * @param readHitRatioSince 预热开始后新增读取的命中率
+     */
+    public record WarmupProgress(String state, int limit, long processed, long alreadyCached, long seeded,
+                                 long elapsedMs, double notesPerSec,
+                                 double coverageBefore, double coverageAfter,
+                                 double readHitRatioBefore, double readHitRatioSince) {
+
+        static WarmupProgress idle() {
+            return new WarmupProgress("IDLE", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public NoteStatsWarmupService(NoteStatsMapper noteStatsMapper, NoteStatsRedisStore statsStore) {
+        this.noteStatsMapper = noteStatsMapper;
+        this.statsStore = statsStore;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabledOnStartup) {
+            start(defaultLimit);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 异步开始预热
+     * @param limit 最多预热的笔记数，<= 0 时使用配置值
+     * @return 已有预热在进行时返回 false
+     */
+    public boolean start(int limit) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        int target = limit > 0 ? limit : defaultLimit;
+        executor.execute(() -> {
+            try {
+                warmup(target);
+            } catch (Exception e) {
+                log.error("笔记统计预热失败", e);
+                WarmupProgress p = progress;
+                progress = new WarmupProgress("FAILED", p.limit(), p.processed(), p.alreadyCached(), p.seeded(),
+                        p.elapsedMs(), p.notesPerSec(), p.coverageBefore(), p.coverageAfter(),
+                        p.readHitRatioBefore(), p.readHitRatioSince());
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public WarmupProgress getProgress() {
+        return progress;
+    }
+
+    private void warmup(int limit) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long hitsBefore = statsStore.getReadHits();
+        long missesBefore = statsStore.getReadMisses();
+        double hitRatioBefore = ratio(hitsBefore, hitsBefore + missesBefore);
+
+        long processed = 0;
+        long warmed = 0;
+        long seeded = 0;
+        long cachedAfter = 0;
+        LocalDateTime cursorTime = null;
+        Long cursorId = null;
+        log.info("笔记统计预热开始: limit={}, chunkSize={}, opsPerSecond={}", limit, chunkSize, opsPerSecond);
+
+        while (processed < limit) {
+            int size = (int) Math.min(chunkSize, limit - processed);
+            List<NoteStatsDO> chunk = noteStatsMapper.getRecentUpdatedAfter(cursorTime, cursorId, size);
+            if (chunk.isEmpty()) break;
+
+            NoteStatsDO last = chunk.get(chunk.size() - 1);
+            if (last.getLastActivityAt() == null) {
+                // 游标依赖 last_activity_at，遇到空值即停止（其余都是从未活跃的笔记）
+                chunk = chunk.stream().filter(s -> s.getLastActivityAt() != null).toList();
+            }
+            List<NoteStatsDO> valid = chunk.stream().filter(s -> s.getNoteId() != null && s.getNoteId() > 0).toList();
+
+            seeded += statsStore.seedIfAbsent(valid);
+            cachedAfter += statsStore.countCached(valid.stream().map(NoteStatsDO::getNoteId).toList());
+            warmed += valid.size();
+            processed += chunk.size();
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1L);
+            long hits = statsStore.getReadHits() - hitsBefore;
+            long misses = statsStore.getReadMisses() - missesBefore;
+            progress = new WarmupProgress("RUNNING", limit, processed, warmed - seeded, seeded,
+                    elapsed, processed * 1000.0 / elapsed,
+                    ratio(warmed - seeded, warmed), ratio(cachedAfter, warmed),
+                    hitRatioBefore, ratio(hits, hits + misses));
+            log.debug("笔记统计预热进度: {}/{}, seeded={}", processed, limit, seeded);
+
+            if (last.getLastActivityAt() == null || chunk.size() < size) break;
+            cursorTime = last.getLastActivityAt();
+            cursorId = last.getNoteId();
+
+            pace(start, processed);
+        }
+
+        long elapsed = Math.max(System.currentTimeMillis() - start, 1L);
+        long hits = statsStore.getReadHits() - hitsBefore;
+        long misses = statsStore.getReadMisses() - missesBefore;
+        progress = new WarmupProgress("DONE", limit, processed, warmed - seeded, seeded,
+                elapsed, processed * 1000.0 / elapsed,
+                ratio(warmed - seeded, warmed), ratio(cachedAfter, warmed),
+                hitRatioBefore, ratio(hits, hits + misses));
+        log.info("笔记统计预热完成: processed={}, seeded={}, cost={}ms, 预热集合覆盖率 {} → {}, 读取命中率 预热前 {} / 预热期间 {}",
+                processed, seeded, elapsed,
+                percent(progress.coverageBefore()), percent(progress.coverageAfter()), percent(hitRatioBefore), percent(progress.readHitRatioSince()));
+    }
+
+    /**
+     * 按操作预算控制节奏：已完成的操作数应花费的时间比实际耗时长时，补足差值
+     */
+    private void pace(long start, long ops) throws InterruptedException {
+        if (opsPerSecond <= 0) return;
+        long expectedMs = ops * 1000L / opsPerSecond;
+        long actualMs = System.currentTimeMillis() - start;
+        if (expectedMs > actualMs) {
+            TimeUnit.MILLISECONDS.sleep(expectedMs - actualMs);
+        }
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    private static String percent(double ratio) {
+        return String.format("%.1f%%", ratio * 100);
+    }
+}
@@ -0,0 +1,87 @@
+package com.project.login.service.notestats;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 浏览去重与独立访客计数
+ * 1. 去重窗口：按 dedupe-window-seconds 把时间切成固定窗口，每篇笔记每个窗口一个
+ *    note_view_seen:{noteId}:{窗口号} Set，成员为 userId，窗口结束后整体过期；
+ *    成员数不超过 set-max-intset-entries（默认 512）时为 intset 编码，每个用户 8 字节以内，
+ *    超过后转为 hashtable，每个成员约 50 字节以上；同一窗口内的重复浏览不再计数，也不产生行为事件
+ * 2. 独立访客：每篇笔记一个 note_uv:{noteId} HyperLogLog，只在计数的浏览上 PFADD，
+ *    内存上限约 12KB，误差约 0.81%
+ * 两步在同一个脚本内完成，一次往返
+ */
+@Slf4j
+@Component
+public class NoteViewTracker {
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${note-stats.views.dedupe-window-seconds:1800}")
+    private long windowSeconds;
+
+    private static final String SEEN_KEY_PREFIX = "note_view_seen:";
+    private static final String UV_KEY_PREFIX = "note_uv:";
+
+    /**
+     * KEYS[1] = 当前窗口的去重 Set，KEYS[2] = 独立访客 HyperLogLog
+     * ARGV = userId, 去重 Set 的过期秒数
+     * 窗口内已浏览过返回 0；否则登记并计入独立访客，返回 1
+     */
+    private static final String VIEW_LUA =
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "redis.call('PFADD', KEYS[2], ARGV[1])\n" +
+            "return 1";
+
+    private static final DefaultRedisScript<Long> VIEW_SCRIPT = new DefaultRedisScript<>(VIEW_LUA, Long.class);
+
+    public NoteViewTracker(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 登记一次浏览
+     * @return true 表示本窗口内首次浏览，应当计数；Redis 异常时放行
+     */
+    public boolean shouldCount(Long noteId, Long userId) {
+        if (noteId == null || userId == null || windowSeconds <= 0) {
+            return true;
+        }
+        long window = System.currentTimeMillis() / 1000 / windowSeconds;
+        String seenKey = SEEN_KEY_PREFIX + noteId + ":" + window;
+        try {
+            Long result = redisTemplate.execute(VIEW_SCRIPT,
+                    List.of(seenKey, UV_KEY_PREFIX + noteId),
+                    userId.toString(),
+                    String.valueOf(windowSeconds + 60));
+            return result == null || result == 1;
+        } catch (Exception e) {
+            log.warn("浏览去重失败，按新浏览计数, noteId={}, userId={}", noteId, userId, e);
+            return true;
+        }
+    }
+
+    /**
+     * 独立访客数（HyperLogLog 估算值）
+     */
+    public long uniqueViewers(Long noteId) {
+        if (noteId == null) return 0L;
+        try {
+            Long count = redisTemplate.opsForHyperLogLog().size(UV_KEY_PREFIX + noteId);
+            return count == null ? 0L : count;
+        } catch (Exception e) {
+            log.warn("读取独立访客数失败, noteId={}", noteId, e);
+            return 0L;
+        }
+    }
+}
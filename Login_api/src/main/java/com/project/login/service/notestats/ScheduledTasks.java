@@ -4,15 +4,18 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+
 @Component
 @RequiredArgsConstructor
 public class ScheduledTasks {
 
     private final NoteStatsService noteStatsService;
     private final CompensationService compensationService;
+    private final NoteActivityService noteActivityService;
 
-    // 每5分钟批量 flush Redis -> MQ（可根据负载调节）
-    @Scheduled(cron = "0 */30 * * * *")
+    // 每5秒把有变化的统计 flush Redis -> MQ（只处理脏集合，空闲时仅一次 SPOP）
+    @Scheduled(fixedDelay = 5000)
     public void flushRedisToMQ() {
         noteStatsService.flushToMQ();
     }
@@ -22,4 +25,10 @@ public class ScheduledTasks {
     public void processCompensation() {
         compensationService.retryCompensation();
     }
+
+    // 每天 00:10 把前一天的小时桶汇总到 note_stats_daily（可重复执行）
+    @Scheduled(cron = "0 10 0 * * *")
+    public void rollupActivity() {
+        noteActivityService.rollupDay(LocalDate.now().minusDays(1));
+    }
 }
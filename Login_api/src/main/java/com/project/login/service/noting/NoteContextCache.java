@@ -0,0 +1,156 @@
+package com.project.login.service.noting;
+
+import com.project.login.mapper.NoteMapper;
+import com.project.login.model.dataobject.NoteContextDO;
+import com.project.login.service.cache.DelayedCacheInvalidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 笔记归属上下文缓存（cache-aside）
+ * 1. 每篇笔记一个 Hash：note_context:{noteId} → notebookId / spaceId / ownerId / notebookTag / spaceTag
+ * 2. 未命中时一条 JOIN 查出并回填，替代 笔记 → 笔记本 → 空间 → 标签 的多次顺序查询
+ * 3. 笔记移动、笔记本/空间的标签变更、移动和删除时先删缓存，再交给 {@link DelayedCacheInvalidator} 延时再删一次；
+ *    笔记本和空间级别的变更按其下的笔记 id 批量删除
+ */
+@Slf4j
+@Component
+public class NoteContextCache {
+
+    private static final String KEY_PREFIX = "note_context:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final NoteMapper noteMapper;
+    private final DelayedCacheInvalidator invalidator;
+
+    @Value("${cache.note-context.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${cache.note-context.double-delete-delay-ms:500}")
+    private long doubleDeleteDelayMs;
+
+    public NoteContextCache(StringRedisTemplate redisTemplate, NoteMapper noteMapper,
+                            DelayedCacheInvalidator invalidator) {
+        this.redisTemplate = redisTemplate;
+        this.noteMapper = noteMapper;
+        this.invalidator = invalidator;
+    }
+
+    public static String keyOf(Long noteId) {
+        return KEY_PREFIX + noteId;
+    }
+
+    /**
+     * 读取笔记上下文，笔记不存在时返回 null
+     */
+    public NoteContextDO get(Long noteId) {
+        if (noteId == null) return null;
+        String key = keyOf(noteId);
+
+        try {
+            Map<Object, Object> cached = redisTemplate.opsForHash().entries(key);
+            if (!cached.isEmpty()) {
+                return fromHash(noteId, cached);
+            }
+        } catch (Exception e) {
+            log.warn("读取笔记上下文缓存失败, noteId={}", noteId, e);
+        }
+
+        NoteContextDO context = noteMapper.selectContextById(noteId);
+        if (context != null) {
+            fill(key, context);
+        }
+        return context;
+    }
+
+    /**
+     * 笔记移动或删除后调用
+     */
+    public void evict(Long noteId) {
+        if (noteId == null) return;
+        evictAll(List.of(noteId));
+    }
+
+    /**
+     * 笔记本标签变更、移动或删除后调用；删除时须在删除笔记之前调用
+     */
+    public void evictNotebook(Long notebookId) {
+        if (notebookId == null) return;
+        evictAll(noteMapper.selectIdsByNotebookId(notebookId));
+    }
+
+    /**
+     * 笔记空间标签变更或删除后调用；删除时须在删除空间之前调用
+     */
+    public void evictSpace(Long spaceId) {
+        if (spaceId == null) return;
+        evictAll(noteMapper.selectIdsBySpaceId(spaceId));
+    }
+
+    private void evictAll(Collection<Long> noteIds) {
+        if (noteIds == null || noteIds.isEmpty()) return;
+        List<String> keys = noteIds.stream().map(NoteContextCache::keyOf).toList();
+        try {
+            redisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.warn("删除笔记上下文缓存失败, size={}", keys.size(), e);
+        }
+        // 延时再删一次，覆盖事务提交前被并发读回填的旧值
+        invalidator.invalidateLater(Duration.ofMillis(doubleDeleteDelayMs), keys);
+    }
+
+    private void fill(String key, NoteContextDO context) {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("notebookId", String.valueOf(context.getNotebookId()));
+        hash.put("spaceId", String.valueOf(context.getSpaceId()));
+        hash.put("ownerId", String.valueOf(context.getOwnerId()));
+        hash.put("notebookTag", context.getNotebookTag() == null ? "" : context.getNotebookTag());
+        hash.put("spaceTag", context.getSpaceTag() == null ? "" : context.getSpaceTag());
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForHash().putAll(key, hash);
+                    ops.expire(key, Duration.ofSeconds(ttlSeconds));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("回填笔记上下文缓存失败, key={}", key, e);
+        }
+    }
+
+    private static NoteContextDO fromHash(Long noteId, Map<Object, Object> hash) {
+        return NoteContextDO.builder()
+                .noteId(noteId)
+                .notebookId(toLong(hash.get("notebookId")))
+                .spaceId(toLong(hash.get("spaceId")))
+                .ownerId(toLong(hash.get("ownerId")))
+                .notebookTag(emptyToNull(hash.get("notebookTag")))
+                .spaceTag(emptyToNull(hash.get("spaceTag")))
+                .build();
+    }
+
+    private static Long toLong(Object value) {
+        if (value == null || "null".equals(value)) return null;
+        return Long.valueOf(value.toString());
+    }
+
+    private static String emptyToNull(Object value) {
+        if (value == null || value.toString().isEmpty()) return null;
+        return value.toString();
+    }
+}
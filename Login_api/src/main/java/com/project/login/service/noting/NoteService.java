@@ -41,6 +41,7 @@ public class NoteService {
     private final NotificationService notificationService;
     private final NoteModerationMapper noteModerationMapper;
     private final NoteRepository noteRepository;
+    private final NoteContextCache noteContextCache;
 
     @Qualifier("noteConvert")
     private final NoteConvert convert;
@@ -155,6 +156,7 @@ public class NoteService {
         noteMapper.deleteById(dto.getNoteId());
 
         noteStatsMapper.deleteById(dto.getNoteId());
+        noteContextCache.evict(dto.getNoteId());
 
         // --- 发布异步更新 ES 事件 ---
         EsNoteEvent event = new EsNoteEvent();
@@ -184,6 +186,7 @@ public class NoteService {
         note.setUpdatedAt(LocalDateTime.now());
 
         noteMapper.update(note);
+        noteContextCache.evict(note.getId());
 
         return convert.toVO(note);
     }
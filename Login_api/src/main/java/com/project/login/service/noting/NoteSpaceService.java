@@ -24,6 +24,7 @@ public class NoteSpaceService {
     private final UserMapper userMapper;
     private final TagMapper tagMapper;
     private final NotebookMapper notebookMapper;
+    private final NoteContextCache noteContextCache;
     @Qualifier("noteSpaceConvert")
     private final NoteSpaceConvert convert;
 
@@ -77,6 +78,9 @@ public class NoteSpaceService {
         existing.setUpdatedAt(LocalDateTime.now());
 
         noteSpaceMapper.updateNoteSpace(existing);
+        if (!tagId.equals(oldTagId)) {
+            noteContextCache.evictSpace(existing.getId());
+        }
 
         Integer spaceCount = noteSpaceMapper.countByTagId(oldTagId);
 
@@ -101,6 +105,8 @@ public class NoteSpaceService {
 
         Long tagId = existing.getTagId();
 
+        // 先按笔记 id 删除上下文缓存，空间级联删除后就查不到了
+        noteContextCache.evictSpace(dto.getId());
         noteSpaceMapper.deleteNoteSpace(dto.getId());
 
         Integer spaceCount = noteSpaceMapper.countByTagId(tagId);
@@ -27,6 +27,7 @@ public class NotebookService {
     private final NoteMapper noteMapper;
     private final NoteSpaceMapper noteSpaceMapper;
     private final TagMapper tagMapper;
+    private final NoteContextCache noteContextCache;
 
     @Qualifier("notebookConvert")
     private final NotebookConvert convert;
@@ -84,6 +85,9 @@ public class NotebookService {
 
         // 4. 使用 Mapper 更新数据库
         notebookMapper.update(existing);
+        if (!tagId.equals(oldTagId)) {
+            noteContextCache.evictNotebook(existing.getId());
+        }
 
         Integer spaceCount = noteSpaceMapper.countByTagId(oldTagId);
 
@@ -105,6 +109,8 @@ public class NotebookService {
 
         Long tagId = notebook.getTagId();
 
+        // 先按笔记 id 删除上下文缓存，笔记删除后就查不到了
+        noteContextCache.evictNotebook(notebook.getId());
         noteMapper.deleteByNotebookId(notebook.getId());
 
         notebookMapper.deleteById(notebook.getId());
@@ -132,6 +138,7 @@ public class NotebookService {
         notebook.setUpdatedAt(LocalDateTime.now());
 
         notebookMapper.update(notebook);
+        noteContextCache.evictNotebook(notebook.getId());
 
         return convert.toVO(notebook);
     }
@@ -7,11 +7,12 @@ import com.project.login.model.dataobject.NoteStatsDO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
@@ -20,102 +21,88 @@ public class NoteStatsConsumer {
 
     private final NoteStatsMapper noteStatsMapper;
     private final NoteStatsCompensationMapper compensationMapper;
-    private final RedisTemplate<String, Object> redisTemplate;
 
-    private static final String REDIS_KEY_PREFIX = "note_stats:";
-
-    @RabbitListener(queues = "note.redis.queue")
-    public void process(Map<String, Object> data) {
-        try {
-            Long noteId = parseLongSafe(data.get("note_id"));
-            if (noteId < 1) {
-                log.warn("Invalid noteId={}, writing to compensation instead", noteId);
-                writeCompensationSafe(data);
-                return;
-            }
-
-            String authorName = String.valueOf(data.getOrDefault("authorName", ""));
-
-            // 确保值不为负数
-            long views = Math.max(0, parseLongSafe(data.getOrDefault("views", 0)));
-            long likes = Math.max(0, parseLongSafe(data.getOrDefault("likes", 0)));
-            long favorites = Math.max(0, parseLongSafe(data.getOrDefault("favorites", 0)));
-            long comments = Math.max(0, parseLongSafe(data.getOrDefault("comments", 0)));
-            LocalDateTime lastActivity = parseDateTimeSafe(data.get("last_activity_at"));
-            long version = parseLongSafe(data.getOrDefault("version", 0));
-
-            NoteStatsDO totals = new NoteStatsDO();
-            totals.setNoteId(noteId);
-            totals.setAuthorName(authorName);
-            totals.setViews(views);
-            totals.setLikes(likes);
-            totals.setFavorites(favorites);
-            totals.setComments(comments);
-            totals.setLastActivityAt(lastActivity);
-            totals.setVersion(version);
-
-            // 1) 乐观锁全量更新
-            int updated = noteStatsMapper.updateTotalsIfVersion(totals);
-            if (updated > 0) {
-                deleteIfCold(noteId, lastActivity);
-                return;
-            }
-
-            // 2) 乐观锁失败 → 获取 DB 当前值
-            NoteStatsDO db = noteStatsMapper.getById(noteId);
-            if (db == null) {
-                try {
-                    noteStatsMapper.insert(totals);
-                    deleteIfCold(noteId, lastActivity);
-                    return;
-                } catch (Exception e) {
-                    log.warn("Insert failed for noteId={}, fallback to delta", noteId, e);
+    /** 单条 INSERT ... ON DUPLICATE KEY UPDATE 的最大行数 */
+    private static final int UPSERT_CHUNK_SIZE = 500;
+
+    private final AtomicLong totalRows = new AtomicLong();
+    private final AtomicLong totalRejected = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    /**
+     * 批量消费：一次拿到多条消息（每条消息可能带 items 批次，也兼容旧的单条格式），
+     * 同一 noteId 只保留最新的快照，按块以多行 upsert 写入
+     */
+    @RabbitListener(queues = "note.redis.queue", containerFactory = "noteStatsBatchListenerFactory")
+    public void process(List<Map<String, Object>> messages) {
+        long start = System.currentTimeMillis();
+
+        Map<Long, NoteStatsDO> latest = new LinkedHashMap<>();
+        for (Map<String, Object> message : messages) {
+            if (message.get("items") instanceof List<?> items) {
+                for (Object item : items) {
+                    if (item instanceof Map<?, ?> map) collect(map, latest);
                 }
+            } else {
+                collect(message, latest);
             }
+        }
+        if (latest.isEmpty()) return;
 
-            // 3) 计算增量
-            long dv = totals.getViews() - safe(db == null ? null : db.getViews());
-            long dl = totals.getLikes() - safe(db == null ? null : db.getLikes());
-            long df = totals.getFavorites() - safe(db == null ? null : db.getFavorites());
-            long dc = totals.getComments() - safe(db == null ? null : db.getComments());
-
-            boolean allNonPositive = dv <= 0 && dl <= 0 && df <= 0 && dc <= 0;
-            if (allNonPositive &&
-                    db != null &&
-                    db.getLastActivityAt() != null &&
-                    !db.getLastActivityAt().isBefore(lastActivity)) {
+        List<NoteStatsDO> rows = new ArrayList<>(latest.values());
+        int rejected = 0;
+        for (int i = 0; i < rows.size(); i += UPSERT_CHUNK_SIZE) {
+            rejected += upsert(rows.subList(i, Math.min(i + UPSERT_CHUNK_SIZE, rows.size())));
+        }
 
-                deleteIfCold(noteId, lastActivity);
-                return;
-            }
+        long cost = Math.max(System.currentTimeMillis() - start, 1L);
+        long rowsTotal = totalRows.addAndGet(rows.size());
+        long rejectedTotal = totalRejected.addAndGet(rejected);
+        long millisTotal = totalMillis.addAndGet(cost);
+        log.info("note_stats 批量落库: messages={}, rows={}, rejected={}, cost={}ms, {} rows/s (累计 rows={}, rejected={}, 平均 {} rows/s)",
+                messages.size(), rows.size(), rejected, cost, rows.size() * 1000L / cost,
+                rowsTotal, rejectedTotal, rowsTotal * 1000L / Math.max(millisTotal, 1L));
+    }
 
-            // 4) 增量更新
-            NoteStatsDO deltas = new NoteStatsDO();
-            deltas.setNoteId(noteId);
-            deltas.setViews(Math.max(dv, 0));
-            deltas.setLikes(Math.max(dl, 0));
-            deltas.setFavorites(Math.max(df, 0));
-            deltas.setComments(Math.max(dc, 0));
-            deltas.setAuthorName(authorName);
-            deltas.setLastActivityAt(lastActivity);
-
-            int incUpdated = noteStatsMapper.incrementByDeltas(deltas);
-            if (incUpdated > 0) {
-                deleteIfCold(noteId, lastActivity);
-                return;
+    /**
+     * 多行 upsert；违反约束时二分定位，只有单独执行仍失败的行（如笔记已删除导致外键失败）写入补偿表。
+     * 连接失败、超时、死锁等其它异常直接抛出，整批消息重新入队（快照 upsert 幂等，已写入的块重放无副作用），
+     * 不再逐行试错，也不写同样会失败的补偿表
+     * @return 被拒绝的行数
+     */
+    private int upsert(List<NoteStatsDO> rows) {
+        try {
+            noteStatsMapper.upsertTotalsBatch(rows);
+            return 0;
+        } catch (DataIntegrityViolationException e) {
+            if (rows.size() == 1) {
+                log.warn("note_stats upsert rejected, noteId={}", rows.get(0).getNoteId(), e);
+                writeCompensation(rows.get(0));
+                return 1;
             }
-
-            // 5) 增量失败 → 写补偿
-            writeCompensation(noteId, totals, authorName, lastActivity);
-
-        } catch (Exception ex) {
-            log.error("Error processing MQ data: {}", data, ex);
-            writeCompensationSafe(data);
+            int mid = rows.size() / 2;
+            return upsert(rows.subList(0, mid)) + upsert(rows.subList(mid, rows.size()));
         }
     }
 
-    private long safe(Long v) {
-        return v == null ? 0L : v;
+    private void collect(Map<?, ?> data, Map<Long, NoteStatsDO> latest) {
+        Long noteId = parseLongSafe(data.get("note_id"));
+        if (noteId < 1) {
+            log.warn("Invalid noteId={}, skip", noteId);
+            return;
+        }
+        NoteStatsDO totals = new NoteStatsDO();
+        totals.setNoteId(noteId);
+        totals.setAuthorName(Objects.toString(data.get("authorName"), ""));
+        // 确保值不为负数
+        totals.setViews(Math.max(0, parseLongSafe(data.get("views"))));
+        totals.setLikes(Math.max(0, parseLongSafe(data.get("likes"))));
+        totals.setFavorites(Math.max(0, parseLongSafe(data.get("favorites"))));
+        totals.setComments(Math.max(0, parseLongSafe(data.get("comments"))));
+        totals.setLastActivityAt(parseDateTimeSafe(data.get("last_activity_at")));
+
+        latest.merge(noteId, totals, (old, cur) ->
+                cur.getLastActivityAt().isBefore(old.getLastActivityAt()) ? old : cur);
     }
 
     private Long parseLongSafe(Object obj) {
@@ -128,57 +115,21 @@ public class NoteStatsConsumer {
         catch (Exception e) { return LocalDateTime.now(); }
     }
 
-    private void deleteIfCold(Long noteId, LocalDateTime incomingLast) {
-        String key = REDIS_KEY_PREFIX + noteId;
-        Object redisLastObj = redisTemplate.opsForHash().get(key, "last_activity_at");
-
-        if (redisLastObj == null) {
-            redisTemplate.delete(key);
-            return;
-        }
-
+    private void writeCompensation(NoteStatsDO totals) {
         try {
-            LocalDateTime redisLast = LocalDateTime.parse(redisLastObj.toString());
-            if (!redisLast.isAfter(incomingLast)) {
-                redisTemplate.delete(key);
-            }
-        } catch (Exception e) {
-            redisTemplate.delete(key);
-        }
-    }
-
-    private void writeCompensation(Long noteId, NoteStatsDO totals, String authorName, LocalDateTime lastActivity) {
-        NoteStatsCompensationDO comp = new NoteStatsCompensationDO();
-        comp.setNoteId(noteId);
-        comp.setAuthorName(authorName);
-        comp.setViews(totals.getViews());
-        comp.setLikes(totals.getLikes());
-        comp.setFavorites(totals.getFavorites());
-        comp.setComments(totals.getComments());
-        comp.setLastActivityAt(lastActivity);
-        comp.setStatus("PENDING");
-        comp.setRetryCount(0);
-        compensationMapper.insert(comp);
-    }
-
-    private void writeCompensationSafe(Map<String, Object> data) {
-        try {
-            Long noteId = parseLongSafe(data.get("note_id"));
-
             NoteStatsCompensationDO comp = new NoteStatsCompensationDO();
-            comp.setNoteId(noteId < 1 ? 1 : noteId);
-            comp.setAuthorName(String.valueOf(data.getOrDefault("authorName", "")));
-            comp.setViews(parseLongSafe(data.getOrDefault("views", 0)));
-            comp.setLikes(parseLongSafe(data.getOrDefault("likes", 0)));
-            comp.setFavorites(parseLongSafe(data.getOrDefault("favorites", 0)));
-            comp.setComments(parseLongSafe(data.getOrDefault("comments", 0)));
-            comp.setLastActivityAt(parseDateTimeSafe(data.get("last_activity_at")));
+            comp.setNoteId(totals.getNoteId());
+            comp.setAuthorName(totals.getAuthorName());
+            comp.setViews(totals.getViews());
+            comp.setLikes(totals.getLikes());
+            comp.setFavorites(totals.getFavorites());
+            comp.setComments(totals.getComments());
+            comp.setLastActivityAt(totals.getLastActivityAt());
             comp.setStatus("PENDING");
             comp.setRetryCount(0);
             compensationMapper.insert(comp);
-
         } catch (Exception e) {
-            log.error("Failed to write compensation for message {}", data, e);
+            log.error("Failed to write compensation for noteId={}", totals.getNoteId(), e);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,77 +1,68 @@
 package com.project.login.service.rabbitmq.consumer;
 
+import com.mongodb.bulk.BulkWriteResult;
 import com.project.login.model.dataobject.RemarkCountDO;
-import com.project.login.model.dataobject.RemarkLikeByUsersDO;
-import com.project.login.repository.RemarkLikeByUsersRepository;
-import com.project.login.repository.RemarkLikeCountRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class RemarkConsumer {
-    private final RemarkLikeCountRepository remarkLikeCountRepository;
-    private final RemarkLikeByUsersRepository remarkLikeByUsersRepository;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 消息格式：{"items": [{"remarkId": ..., "likeCount": ...}, ...]}，兼容旧的单条格式
+     * 整批通过一次 bulkWrite upsert 写入 MongoDB
+     */
     @RabbitListener(queues = "remarkLikeCount.redis.queue")
     public void handleLikeCountMessage(Map<String, Object> msg) {
-        String remarkId = (String) msg.get("remarkId");
-        Long likeCount = Long.parseLong(msg.get("likeCount").toString());
-        if(likeCount!=null){
-            log.info("get likeCount"+likeCount.toString());
-        }
-        if(remarkId==null){
-            return;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RemarkCountDO.class);
+        int size = 0;
+        for (Map<?, ?> item : items(msg)) {
+            Object remarkId = item.get("remarkId");
+            Object likeCount = item.get("likeCount");
+            if (remarkId == null || likeCount == null) continue;
+            bulk.upsert(
+                    new Query(Criteria.where("remarkId").is(remarkId.toString())),
+                    new Update().set("remarkLikeCount", Long.parseLong(likeCount.toString()))
+            );
+            size++;
         }
-        // 点赞数量写入 MongoDB
-        remarkLikeCountRepository.findById(remarkId).ifPresentOrElse(
-                remarkCountDO -> {
-                    remarkCountDO.setRemarkLikeCount(likeCount);
-                    remarkLikeCountRepository.save(remarkCountDO);
-                },
-                () -> {
-                    RemarkCountDO remarkCountDO = new RemarkCountDO();
-                    remarkCountDO.setRemarkId(remarkId);
-                    remarkCountDO.setRemarkLikeCount(likeCount);
-                    remarkLikeCountRepository.save(remarkCountDO);
-                }
-        );
+        if (size == 0) return;
+        BulkWriteResult result = bulk.execute();
+        log.info("评论点赞数落库 {} 条, matched={}, upserted={}", size, result.getMatchedCount(), result.getUpserts().size());
     }
+
+    /**
+     * 旧版本发出的整集合消息：点赞记录已改为每个 (remarkId, userId) 一条文档、点赞时同步写入，
+     * 历史数据由 RemarkIndexInitializer 迁移。残留消息是过期快照，按它写入会把之后取消的点赞加回来，
+     * 这里只记录日志后丢弃（正常返回即确认）
+     */
     @RabbitListener(queues = "remarkLikeUsers.redis.queue")
     public void handleLikeUsersMessage(Map<String, Object> msg) {
-        String remarkId = (String) msg.get("remarkId");
-        Object usersObj = msg.get("users");
-        Set<Long> userSet=new HashSet<>();
-        log.info("usersObj = {}", usersObj);
-        log.info("usersObj class = {}", usersObj == null ? "null" : usersObj.getClass().getName());
+        List<Map<?, ?>> items = items(msg);
+        log.info("丢弃旧格式评论点赞用户消息, remarks={}", items.size());
+    }
 
-        if (usersObj instanceof Iterable<?>) {  // 包含 List / Set / LinkedHashSet / ArrayList
-            for (Object o : (Iterable<?>) usersObj) {
-                userSet.add(Long.parseLong(o.toString()));
+    private List<Map<?, ?>> items(Map<String, Object> msg) {
+        List<Map<?, ?>> items = new ArrayList<>();
+        if (msg.get("items") instanceof Iterable<?> list) {
+            for (Object o : list) {
+                if (o instanceof Map<?, ?> item) items.add(item);
             }
-            log.info("users parsed as iterable: {}", userSet);
-        } else {
-            log.warn("users is not iterable, value = {}", usersObj);
+        } else if (msg.containsKey("remarkId")) {
+            items.add(msg);
         }
-        // 点赞用户写入 MongoDB
-        remarkLikeByUsersRepository.findById(remarkId).ifPresentOrElse(
-                remarkLikeByUsersDO -> {
-                    remarkLikeByUsersDO.setUserList(userSet);
-                    remarkLikeByUsersRepository.save(remarkLikeByUsersDO);
-                },
-                () -> {
-                    RemarkLikeByUsersDO remarkLikeByUsersDO = new RemarkLikeByUsersDO();
-                    remarkLikeByUsersDO.setRemarkId(remarkId);
-                    remarkLikeByUsersDO.setUserList(userSet);
-                    remarkLikeByUsersRepository.save(remarkLikeByUsersDO);
-                }
-        );
+        return items;
     }
 }
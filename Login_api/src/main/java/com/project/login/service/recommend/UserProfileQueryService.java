@@ -4,42 +4,38 @@ import com.project.login.model.dataobject.QuestionDO;
 import com.project.login.model.vo.NoteSearchVO;
 import com.project.login.model.dto.search.NoteSearchDTO;
 import com.project.login.model.vo.qa.QuestionVO;
+import com.project.login.service.flink.UserProfileWriter;
 import com.project.login.service.qa.QuestionService;
 import com.project.login.service.search.SearchQAService;
 import com.project.login.service.search.SearchService;
 import org.springframework.stereotype.Service;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class UserProfileQueryService {
 
     private final StringRedisTemplate redisTemplate;
-    private final ObjectMapper objectMapper;
     private final SearchService searchService;
     private final SearchQAService qaService;
 
-    public UserProfileQueryService(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+    public UserProfileQueryService(StringRedisTemplate redisTemplate,
                                    SearchService searchService, SearchQAService qaService) {
         this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
         this.searchService = searchService;
         this.qaService = qaService;
     }
 
-    private List<String> getTopKeywords(Long userId, int topN) throws Exception {
-        String json = redisTemplate.opsForValue().get("user_fused_profile:" + userId);
-        if (json == null) return Collections.emptyList();
-
-        Map<String, Double> fused = objectMapper.readValue(json, Map.class);
-        return fused.entrySet().stream()
-                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
-                .limit(topN)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    /**
+     * 用户兴趣画像是按得分排序的 Sorted Set（由 Flink 作业写入），直接取前 topN 个词项
+     */
+    private List<String> getTopKeywords(Long userId, int topN) {
+        if (topN <= 0) return Collections.emptyList();
+        Set<String> keywords = redisTemplate.opsForZSet()
+                .reverseRange(UserProfileWriter.KEY_PREFIX + userId, 0, topN - 1);
+        if (keywords == null) return Collections.emptyList();
+        return new ArrayList<>(keywords);
     }
 
     /**
@@ -0,0 +1,196 @@
+package com.project.login.service.remark;
+
+import com.project.login.model.dataobject.RemarkDO;
+import com.project.login.model.dataobject.RemarkLikeByUsersDO;
+import com.project.login.model.dataobject.RemarkLikeRecordDO;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 启动时确保评论集合的索引存在，为旧数据回填日期类型的 created_time 字段与祖先路径 path，
+ * 并把旧的整集合点赞文档（remark_likes）拆分为逐条点赞记录（remark_like_record）
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RemarkIndexInitializer implements ApplicationRunner {
+
+    private final MongoTemplate mongoTemplate;
+
+    private static final int BACKFILL_BATCH = 500;
+    private static final int LEGACY_LIKE_BATCH = 100;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            ensureIndexes(RemarkDO.class);
+            ensureIndexes(RemarkLikeRecordDO.class);
+            backfillCreatedTime();
+            backfillPath();
+            migrateLegacyLikes();
+        } catch (Exception e) {
+            // MongoDB 不可用时不阻塞启动
+            log.warn("初始化评论索引/回填历史数据失败", e);
+        }
+    }
+
+    private void ensureIndexes(Class<?> entityClass) {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        IndexOperations indexOps = mongoTemplate.indexOps(entityClass);
+        resolver.resolveIndexFor(entityClass).forEach(indexOps::ensureIndex);
+    }
+
+    private void backfillCreatedTime() {
+        Query query = new Query(Criteria.where("createdTime").exists(false)).limit(BACKFILL_BATCH);
+        long total = 0;
+        while (true) {
+            List<RemarkDO> batch = mongoTemplate.find(query, RemarkDO.class);
+            if (batch.isEmpty()) break;
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RemarkDO.class);
+            for (RemarkDO remark : batch) {
+                bulk.updateOne(
+                        new Query(Criteria.where("_id").is(remark.get_id())),
+                        new Update().set("createdTime", RemarkPageLoader.sortTime(remark))
+                );
+            }
+            BulkWriteResult result = bulk.execute();
+            total += result.getModifiedCount();
+            if (result.getModifiedCount() == 0) break;
+            if (batch.size() < BACKFILL_BATCH) break;
+        }
+        if (total > 0) {
+            log.info("已为 {} 条历史评论回填 created_time", total);
+        }
+    }
+
+    /**
+     * 为没有 path 的评论回填祖先路径
+     * 只投影 _id / parentId / isReply 到内存，按父子关系自上而下计算后批量写回
+     */
+    private void backfillPath() {
+        Query query = new Query(Criteria.where("path").exists(false));
+        query.fields().include("_id").include("parentId").include("isReply");
+        Map<String, String> parentOf = new HashMap<>();
+        try (Stream<RemarkDO> stream = mongoTemplate.stream(query, RemarkDO.class)) {
+            stream.forEach(r -> parentOf.put(r.get_id(),
+                    Boolean.TRUE.equals(r.getIsReply()) ? r.getParentId() : null));
+        }
+        if (parentOf.isEmpty()) return;
+
+        // 父评论已有 path（新写入的评论）→ 一次 $in 取出
+        Set<String> outsideParents = new HashSet<>();
+        for (String parentId : parentOf.values()) {
+            if (parentId != null && !parentOf.containsKey(parentId)) outsideParents.add(parentId);
+        }
+        Map<String, String> knownPaths = new HashMap<>();
+        if (!outsideParents.isEmpty()) {
+            Query parentQuery = new Query(Criteria.where("_id").in(outsideParents));
+            parentQuery.fields().include("_id").include("path");
+            for (RemarkDO parent : mongoTemplate.find(parentQuery, RemarkDO.class)) {
+                if (parent.getPath() != null) knownPaths.put(parent.get_id(), parent.getPath());
+            }
+        }
+
+        Map<String, String> paths = new HashMap<>();
+        for (String id : parentOf.keySet()) {
+            resolvePath(id, parentOf, knownPaths, paths);
+        }
+
+        List<Map.Entry<String, String>> entries = new ArrayList<>(paths.entrySet());
+        for (int i = 0; i < entries.size(); i += BACKFILL_BATCH) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RemarkDO.class);
+            for (Map.Entry<String, String> entry : entries.subList(i, Math.min(i + BACKFILL_BATCH, entries.size()))) {
+                bulk.updateOne(
+                        new Query(Criteria.where("_id").is(entry.getKey())),
+                        new Update().set("path", entry.getValue())
+                );
+            }
+            bulk.execute();
+        }
+        log.info("已为 {} 条历史评论回填 path", entries.size());
+    }
+
+    /**
+     * 沿 parentId 向上找到第一个 path 已知的祖先，再自上而下依次得出每一层的 path
+     */
+    private void resolvePath(String id, Map<String, String> parentOf,
+                             Map<String, String> knownPaths, Map<String, String> paths) {
+        Deque<String> chain = new ArrayDeque<>();
+        Set<String> onChain = new HashSet<>();
+        String cur = id;
+        while (!paths.containsKey(cur)) {
+            if (!onChain.add(cur)) {
+                // 脏数据成环，按一级评论处理
+                paths.put(cur, RemarkTreeLoader.ROOT_PATH);
+                break;
+            }
+            chain.push(cur);
+            String parentId = parentOf.get(cur);
+            if (parentId == null) {
+                paths.put(cur, RemarkTreeLoader.ROOT_PATH);
+                break;
+            }
+            if (!parentOf.containsKey(parentId)) {
+                // 父评论已有 path，或已被删除
+                paths.put(cur, knownPaths.getOrDefault(parentId, RemarkTreeLoader.ROOT_PATH) + parentId + "/");
+                break;
+            }
+            cur = parentId;
+        }
+        while (!chain.isEmpty()) {
+            String node = chain.pop();
+            if (paths.containsKey(node)) continue;
+            String parentId = parentOf.get(node);
+            paths.put(node, paths.get(parentId) + parentId + "/");
+        }
+    }
+
+    private void migrateLegacyLikes() {
+        Query query = new Query().limit(LEGACY_LIKE_BATCH);
+        long total = 0;
+        while (true) {
+            List<RemarkLikeByUsersDO> batch = mongoTemplate.find(query, RemarkLikeByUsersDO.class);
+            if (batch.isEmpty()) break;
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RemarkLikeRecordDO.class);
+            int size = 0;
+            for (RemarkLikeByUsersDO legacy : batch) {
+                if (legacy.getUserList() == null) continue;
+                for (Long userId : legacy.getUserList()) {
+                    if (userId == null) continue;
+                    bulk.upsert(
+                            new Query(Criteria.where("remarkId").is(legacy.getRemarkId()).and("userId").is(userId)),
+                            new Update().setOnInsert("createdTime", new Date())
+                    );
+                    size++;
+                }
+            }
+            if (size > 0) {
+                bulk.execute();
+            }
+            total += size;
+            // 已拆分的旧文档直接删除，重启后不会重复迁移
+            List<String> ids = batch.stream().map(RemarkLikeByUsersDO::getRemarkId).toList();
+            mongoTemplate.remove(new Query(Criteria.where("remarkId").in(ids)), RemarkLikeByUsersDO.class);
+        }
+        if (total > 0) {
+            log.info("已将 {} 条历史评论点赞迁移为逐条点赞记录", total);
+        }
+    }
+}
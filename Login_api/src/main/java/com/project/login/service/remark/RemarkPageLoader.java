@@ -0,0 +1,174 @@
+package com.project.login.service.remark;
+
+import com.project.login.model.dataobject.RemarkDO;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 评论游标分页查询
+ * 以 (createdTime, _id) 作为 keyset 游标，依赖 RemarkDO 上的复合索引，翻页开销与页码无关
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RemarkPageLoader {
+
+    private final MongoTemplate mongoTemplate;
+
+    private static final Sort CURSOR_ORDER = Sort.by(Sort.Order.asc("createdTime"), Sort.Order.asc("_id"));
+
+    /**
+     * 游标：上一页最后一条评论的创建时间与 ID
+     */
+    public record Cursor(Date time, ObjectId id) {}
+
+    /**
+     * 某条评论的前 N 条直接回复及回复总数
+     */
+    @Data
+    public static class ReplyPreview {
+        @Id
+        private String parentId;
+        private Integer replyCount;
+        private List<RemarkDO> replies;
+    }
+
+    /**
+     * 查询笔记下游标之后的一级评论
+     * @param limit 最多返回条数（调用方通常传 size + 1 用于判断是否还有下一页）
+     */
+    public List<RemarkDO> findTopLevelAfter(Long noteId, Cursor cursor, int limit) {
+        Criteria criteria = Criteria.where("noteId").is(noteId).and("isReply").is(false);
+        return mongoTemplate.find(pageQuery(criteria, cursor, limit), RemarkDO.class);
+    }
+
+    /**
+     * 查询某条评论游标之后的直接回复
+     */
+    public List<RemarkDO> findRepliesAfter(String parentId, Cursor cursor, int limit) {
+        Criteria criteria = Criteria.where("parentId").is(parentId).and("isReply").is(true);
+        return mongoTemplate.find(pageQuery(criteria, cursor, limit), RemarkDO.class);
+    }
+
+    /**
+     * 一次聚合取出多条评论各自的前 N 条直接回复与回复总数
+     * 分组时用 $firstN 只保留每条评论的前 replySize 条回复（需 MongoDB 5.2+），热门评论的回复再多也不会整组进入内存
+     */
+    public Map<String, ReplyPreview> previewReplies(Collection<String> parentIds, int replySize) {
+        if (parentIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        if (replySize <= 0) {
+            // 不需要预览回复时只统计数量（$firstN 要求 n >= 1）
+            Map<String, ReplyPreview> result = new HashMap<>();
+            countReplies(parentIds).forEach((parentId, count) -> {
+                ReplyPreview preview = new ReplyPreview();
+                preview.setParentId(parentId);
+                preview.setReplyCount(count.intValue());
+                preview.setReplies(List.of());
+                result.put(parentId, preview);
+            });
+            return result;
+        }
+        TypedAggregation<RemarkDO> aggregation = Aggregation.newAggregation(RemarkDO.class,
+                Aggregation.match(Criteria.where("parentId").in(parentIds).and("isReply").is(true)),
+                Aggregation.sort(CURSOR_ORDER),
+                // 手写的阶段不经过字段映射，分组字段须经 context 解析成实际存储的 parent_id
+                context -> new Document("$group", new Document("_id", context.getReference("parentId").toString())
+                        .append("replyCount", new Document("$sum", 1))
+                        .append("replies", new Document("$firstN",
+                                new Document("input", "$$ROOT").append("n", replySize))))
+        );
+        Map<String, ReplyPreview> result = new HashMap<>();
+        for (ReplyPreview preview : mongoTemplate.aggregate(aggregation, ReplyPreview.class).getMappedResults()) {
+            result.put(preview.getParentId(), preview);
+        }
+        return result;
+    }
+
+    /**
+     * 一次聚合统计多条评论的直接回复数
+     */
+    public Map<String, Long> countReplies(Collection<String> parentIds) {
+        if (parentIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        TypedAggregation<RemarkDO> aggregation = Aggregation.newAggregation(RemarkDO.class,
+                Aggregation.match(Criteria.where("parentId").in(parentIds).and("isReply").is(true)),
+                Aggregation.group("parentId").count().as("replyCount")
+        );
+        Map<String, Long> result = new HashMap<>();
+        for (ReplyPreview preview : mongoTemplate.aggregate(aggregation, ReplyPreview.class).getMappedResults()) {
+            result.put(preview.getParentId(), preview.getReplyCount() == null ? 0L : preview.getReplyCount().longValue());
+        }
+        return result;
+    }
+
+    private Query pageQuery(Criteria criteria, Cursor cursor, int limit) {
+        if (cursor != null) {
+            criteria.orOperator(
+                    Criteria.where("createdTime").gt(cursor.time()),
+                    new Criteria().andOperator(
+                            Criteria.where("createdTime").is(cursor.time()),
+                            Criteria.where("_id").gt(cursor.id())
+                    )
+            );
+        }
+        return new Query(criteria).with(CURSOR_ORDER).limit(limit);
+    }
+
+    /**
+     * 评论的排序时间：优先 createdTime，旧数据回退到 createdAt 字符串，再回退到 ObjectId 时间戳
+     */
+    public static Date sortTime(RemarkDO remark) {
+        if (remark.getCreatedTime() != null) {
+            return remark.getCreatedTime();
+        }
+        if (remark.getCreatedAt() != null && !remark.getCreatedAt().isEmpty()) {
+            try {
+                return Date.from(LocalDateTime.parse(remark.getCreatedAt()).atZone(ZoneId.systemDefault()).toInstant());
+            } catch (Exception ignored) {
+                // 继续回退
+            }
+        }
+        if (remark.get_id() != null && ObjectId.isValid(remark.get_id())) {
+            return new ObjectId(remark.get_id()).getDate();
+        }
+        return new Date(0L);
+    }
+
+    public static String encodeCursor(RemarkDO last) {
+        return sortTime(last).getTime() + "_" + last.get_id();
+    }
+
+    public static Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        int idx = cursor.indexOf('_');
+        if (idx <= 0 || !ObjectId.isValid(cursor.substring(idx + 1))) {
+            throw new RuntimeException("无效的分页游标: " + cursor);
+        }
+        try {
+            long millis = Long.parseLong(cursor.substring(0, idx));
+            return new Cursor(new Date(millis), new ObjectId(cursor.substring(idx + 1)));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("无效的分页游标: " + cursor);
+        }
+    }
+}
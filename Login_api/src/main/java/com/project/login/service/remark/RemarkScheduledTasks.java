@@ -20,12 +20,4 @@ public class RemarkScheduledTasks {
         log.info("sending message 1");
         remarkService.flushLikeCountToMQ();
     }
-
-
-    @Scheduled(cron = "0 */5 * * * *")
-    public void flushRedisLikeUsersToMQ() {
-        log.info("sending message 2");
-        remarkService.flushLikeUsersToMQ();
-    }
 }
-
@@ -6,17 +6,19 @@ import com.project.login.mapper.NoteMapper;
 import com.project.login.mapper.UserMapper;
 import com.project.login.model.dataobject.RemarkCountDO;
 import com.project.login.model.dataobject.RemarkDO;
-import com.project.login.model.dataobject.RemarkLikeByUsersDO;
+import com.project.login.model.dataobject.RemarkLikeRecordDO;
 import com.project.login.model.dataobject.UserDO;
 import com.project.login.model.dto.remark.RemarkDeleteDTO;
 import com.project.login.model.dto.remark.RemarkInsertDTO;
 import com.project.login.model.dto.remark.RemarkSelectByNoteDTO;
+import com.project.login.model.vo.RemarkPageVO;
 import com.project.login.model.vo.RemarkVO;
 import com.project.login.model.vo.RemarkDetailVO;
 import com.project.login.model.dataobject.NoteDO;
 import com.project.login.repository.RemarkLikeCountRepository;
-import com.project.login.repository.RemarkLikeByUsersRepository;
+import com.project.login.repository.RemarkLikeRecordRepository;
 import com.project.login.repository.RemarkRepository;
+import com.project.login.service.cache.DelayedCacheInvalidator;
 import com.project.login.service.notestats.NoteStatsService;
 import com.project.login.service.notification.NotificationService;
 import jakarta.transaction.Transactional;
@@ -24,20 +26,23 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.data.domain.Sort;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RemarkService {
     private final RemarkRepository remarkRepository;
-    private final RemarkLikeByUsersRepository remarkLikeByUsersRepository;
+    private final RemarkLikeRecordRepository remarkLikeRecordRepository;
     private final RemarkConvert remarkConvert;
     private final NoteMapper noteMapper;
     private final UserMapper userMapper;
@@ -48,218 +53,119 @@ public class RemarkService {
     private final String remarkIdKey = "remark:";
     private final String NoteIdKey = "note_id_of_remark_list:";
     private final String replyToIdKey = "reply_to:";
-    private final String userLikeRemarkListKey = "remark_user_like:";
     private final RabbitTemplate rabbitTemplate;
     private final String LikeCountQueue="remarkLikeCount.redis.queue";
-    private final String LikeUsersQueue="remarkLikeUsers.redis.queue";
+    private final String dirtyLikeCountKey = "remark_like_dirty:count";
+    private static final int LIKE_FLUSH_BATCH_SIZE = 200;
     private final NotificationService notificationService;
     private final com.project.login.controller.RemarkWebSocketController remarkWebSocketController;
+    private final RemarkTreeLoader remarkTreeLoader;
+    private final RemarkPageLoader remarkPageLoader;
+    private final RemarkViewResolver remarkViewResolver;
+    private final DelayedCacheInvalidator invalidator;
+    private static final Duration DOUBLE_DELETE_DELAY = Duration.ofMillis(50);
+    private static final int MAX_PAGE_SIZE = 50;
 
     private RemarkVO transferDO2VO(RemarkDO remarkDO, UserDO user) {
-        //初始转化与变量准备
-        RemarkVO cur = remarkConvert.toVO(remarkDO);
-        Long loginUserId = user.getId();
-
-        // ------ 设置是否已点赞 ------
-        String redisKey = userLikeRemarkListKey + remarkDO.get_id();
-        boolean liked = false;
-
-        if (redisTemplate.hasKey(redisKey)) {
-            // Redis 有数据 → 直接判断
-            liked = Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(redisKey, loginUserId));
-            redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-
-        } else {
-            // Redis 无数据 → 从数据库加载
-            Optional<RemarkLikeByUsersDO> likeRecord = remarkLikeByUsersRepository.findById(remarkDO.get_id());
-
-            if (likeRecord.isPresent()) {
-                Set<Long> userList = likeRecord.get().getUserList();
-
-                if (userList != null && !userList.isEmpty()) {
-                    // 判断是否点赞
-                    liked = userList.contains(loginUserId);
-
-                    // 同步整个列表到 Redis
-                    redisTemplate.opsForSet().add(redisKey, userList.toArray());
-                    redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-                }
-            }
-        }
-        // ------ 加载点赞数量 ------
-        Long likedCount = 0L;
-        String countKey = remarkLikeCountKey + remarkDO.get_id();
-
-        if (redisTemplate.hasKey(countKey)) {
-
-            Object countObj = redisTemplate.opsForValue().get(countKey);
-            redisTemplate.expire(countKey,Duration.ofMinutes(15));
-            if (countObj instanceof Long l) {
-                likedCount = l;
-            } else if (countObj instanceof Integer i) {
-                likedCount = i.longValue();
-            }
-
-        } else {
-
-            // Redis 无计数 → 从数据库加载
-            RemarkCountDO remarkCount = remarkLikeCountRepository.findById(remarkDO.get_id())
-                    .orElse(null);
-
-            if (remarkCount != null) {
-                likedCount = remarkCount.getRemarkLikeCount();
-                // 同步到 Redis（hash）
-                redisTemplate.opsForValue().set(countKey, remarkCount.getRemarkLikeCount());
-                redisTemplate.expire(countKey,Duration.ofMinutes(15));
-            }
-        }
-        log.info("successfully toVO");
-        cur.setLikedOrNot(liked);
-        cur.setLikeCount(likedCount);
+        // 单条转换同样走批量解析器（一次 pipeline + 未命中时的 $in / IN 查询）
+        return remarkViewResolver.resolve(List.of(remarkDO), user.getId()).get(remarkDO.get_id());
+    }
 
-        // ------ 设置用户头像 ------
-        if (remarkDO.getUserId() != null) {
-            try {
-                UserDO commentAuthor = userMapper.selectById(remarkDO.getUserId());
-                if (commentAuthor != null && commentAuthor.getAvatarUrl() != null) {
-                    cur.setAvatarUrl(commentAuthor.getAvatarUrl());
-                } else {
-                    // 如果没有头像，设置为默认值或空字符串
-                    cur.setAvatarUrl(null);
-                }
-            } catch (Exception e) {
-                log.warn("获取评论用户头像失败，userId: {}", remarkDO.getUserId(), e);
-                cur.setAvatarUrl(null);
-            }
-        }
+    @Transactional
+    public List<RemarkVO> SelectRemark(RemarkSelectByNoteDTO remarkSelectByNoteDTO, Long loginUserId) {
+        Long noteId = remarkSelectByNoteDTO.getNoteId();
 
-        return cur;
+        // 一次取出该笔记下全部评论（Redis MGET 或 MongoDB 单次查询），在内存中组装无限层级回复树
+        List<RemarkDO> remarks = remarkTreeLoader.loadByNoteId(noteId);
+        // 整页评论的点赞状态、点赞数、头像一次性批量解析
+        Map<String, RemarkVO> voMap = remarkViewResolver.resolve(remarks, loginUserId);
+        return remarkTreeLoader.assemble(remarks, remarkDO -> voMap.get(remarkDO.get_id()));
     }
 
     /**
-     * 递归构建评论回复树（支持无限层级）
-     * @param parentId 父评论ID
-     * @param user 当前登录用户
-     * @return 子评论列表（树形结构）
+     * 游标分页查询一级评论，每条附带前 replySize 条直接回复和回复总数
+     * @param cursor 上一页返回的 nextCursor，首页传 null
      */
-    private List<RemarkVO> buildReplyTree(String parentId, UserDO user) {
-        if (parentId == null) {
-            return new ArrayList<>();
+    public RemarkPageVO selectRemarkPage(Long noteId, String cursor, int size, int replySize, Long loginUserId) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        int previewSize = Math.min(Math.max(replySize, 0), MAX_PAGE_SIZE);
+
+        List<RemarkDO> page = remarkPageLoader.findTopLevelAfter(
+                noteId, RemarkPageLoader.decodeCursor(cursor), pageSize + 1);
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
         }
 
-        // 查询所有直接子回复（isReply = true 且 parentId = 当前节点）
-        List<RemarkDO> children = remarkRepository.findRemarksByParentIdAndIsReplyTrue(parentId);
-
-        // 按时间排序
-        children.sort((r1, r2) -> {
-            String t1 = r1.getCreatedAt() != null ? r1.getCreatedAt() : "";
-            String t2 = r2.getCreatedAt() != null ? r2.getCreatedAt() : "";
-            return t1.compareTo(t2);
+        // 一次聚合取所有一级评论的前几条回复与回复数，再一次聚合取这些回复自身的回复数
+        List<String> topIds = page.stream().map(RemarkDO::get_id).toList();
+        Map<String, RemarkPageLoader.ReplyPreview> previews = remarkPageLoader.previewReplies(topIds, previewSize);
+        List<String> previewReplyIds = previews.values().stream()
+                .flatMap(p -> p.getReplies() == null ? Stream.<RemarkDO>empty() : p.getReplies().stream())
+                .map(RemarkDO::get_id)
+                .toList();
+        Map<String, Long> nestedCounts = remarkPageLoader.countReplies(previewReplyIds);
+
+        // 一级评论与预览回复一起批量解析点赞状态、点赞数与头像
+        List<RemarkDO> toResolve = new ArrayList<>(page);
+        previews.values().forEach(p -> {
+            if (p.getReplies() != null) toResolve.addAll(p.getReplies());
         });
+        Map<String, RemarkVO> voMap = remarkViewResolver.resolve(toResolve, loginUserId);
 
-        List<RemarkVO> childVOList = new ArrayList<>();
-        for (RemarkDO child : children) {
-            if (child == null || child.get_id() == null) continue;
-
-            // 先查 Redis
-            RemarkDO childDO = null;
-            String redisKey = remarkIdKey + child.get_id();
-            if (redisTemplate.hasKey(redisKey)) {
-                childDO = (RemarkDO) redisTemplate.opsForValue().get(redisKey);
-                redisTemplate.expire(redisKey, Duration.ofMinutes(15));
-            } else {
-                // Redis 没有则从 MongoDB 获取
-                childDO = remarkRepository.findById(child.get_id()).orElse(null);
-                if (childDO != null) {
-                    redisTemplate.opsForValue().set(redisKey, childDO);
-                    redisTemplate.expire(redisKey, Duration.ofMinutes(15));
+        List<RemarkVO> items = new ArrayList<>(page.size());
+        for (RemarkDO top : page) {
+            RemarkVO vo = voMap.get(top.get_id());
+            RemarkPageLoader.ReplyPreview preview = previews.get(top.get_id());
+            List<RemarkVO> replies = new ArrayList<>();
+            if (preview != null && preview.getReplies() != null) {
+                for (RemarkDO reply : preview.getReplies()) {
+                    RemarkVO replyVO = voMap.get(reply.get_id());
+                    replyVO.setReplyCount(nestedCounts.getOrDefault(reply.get_id(), 0L));
+                    replyVO.setReplies(new ArrayList<>());
+                    replies.add(replyVO);
                 }
             }
-
-            if (childDO == null) continue;
-
-            // 当前节点转 VO
-            RemarkVO childVO = transferDO2VO(childDO, user);
-            // 递归构建子节点
-            List<RemarkVO> grandChildren = buildReplyTree(childDO.get_id(), user);
-            childVO.setReplies(grandChildren);
-
-            childVOList.add(childVO);
+            vo.setReplies(replies);
+            vo.setReplyCount(preview == null || preview.getReplyCount() == null ? 0L : preview.getReplyCount().longValue());
+            items.add(vo);
         }
 
-        return childVOList;
+        return RemarkPageVO.builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? RemarkPageLoader.encodeCursor(page.get(page.size() - 1)) : null)
+                .build();
     }
 
-    @Transactional
-    public List<RemarkVO> SelectRemark(RemarkSelectByNoteDTO remarkSelectByNoteDTO, Long loginUserId) {
-        log.info(loginUserId.toString());
-// 获取当前用户信息
-        UserDO user = userMapper.selectById(loginUserId);
-        log.info(user.toString());
-        Long noteId = remarkSelectByNoteDTO.getNoteId();
-        String noteKey = NoteIdKey + noteId;
-        List<String> remarkFirstLayerList = new ArrayList<>();
-        List<RemarkVO> result = new ArrayList<>();
-
-// --- 一级评论列表处理 ---
-        log.info("initialize complete");
-        if (redisTemplate.hasKey(noteKey)) {
-            // 从Redis读取一级评论ID列表
-            List<Object> tmpList = redisTemplate.opsForList().range(noteKey, 0, -1);
-            log.info("found in redis"+tmpList.toString());
-            redisTemplate.expire(noteKey,Duration.ofMinutes(15));
-            if (tmpList != null) {
-                remarkFirstLayerList = tmpList.stream().map(Object::toString).toList();
-                log.info(remarkFirstLayerList.toString());
-            }
-        } else {
-            // Redis中没有则从MongoDB读取
-            log.info("finding firstLayer in mongodb");
-            List<RemarkDO> tmpRemarkDOList = remarkRepository.findRemarksByNoteIdAndIsReplyFalse(noteId);
-            log.info("get from mongodb,tmpRemarkDOList= "+tmpRemarkDOList.toString());
-            for (RemarkDO cur : tmpRemarkDOList) {
-                if (cur != null && cur.get_id() != null) {
-                    remarkFirstLayerList.add(cur.get_id());
-                }
-            }
-            // 将一级评论ID列表写入Redis
-            if (!remarkFirstLayerList.isEmpty()) {
-                remarkFirstLayerList.forEach(id -> redisTemplate.opsForList().rightPush(noteKey, id));
-                redisTemplate.expire(noteKey,Duration.ofMinutes(15));
-            }
-            log.info("found the firstLayer");
+    /**
+     * 游标分页加载某条评论的直接回复（"加载更多回复"）
+     */
+    public RemarkPageVO selectReplyPage(String parentId, String cursor, int size, Long loginUserId) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+
+        List<RemarkDO> page = remarkPageLoader.findRepliesAfter(
+                parentId, RemarkPageLoader.decodeCursor(cursor), pageSize + 1);
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
         }
 
-// --- 遍历一级评论 ---
-        for (String cur : remarkFirstLayerList) {
-            RemarkDO curDO = null;
-            // 尝试从Redis获取一级评论对象
-            if (redisTemplate.hasKey(remarkIdKey + cur)) {
-                curDO = (RemarkDO) redisTemplate.opsForValue().get(remarkIdKey + cur);
-                redisTemplate.expire(remarkIdKey,Duration.ofMinutes(15));
-            }
-            else {
-                // Redis没有则从MongoDB获取
-                curDO = remarkRepository.findById(cur).orElse(null);
-                if (curDO != null) {
-                    redisTemplate.opsForValue().set(remarkIdKey + cur, curDO);
-                    redisTemplate.expire(remarkIdKey,Duration.ofMinutes(15));
-                }
-            }
-
-            // 如果一级评论对象为空，跳过
-            if (curDO == null) continue;
-            log.info(curDO.toString());
-            // 将DO转换为VO
-            RemarkVO curVO = transferDO2VO(curDO, user);
-            log.info(curVO.toString());
-            // --- 构建无限层级回复树 ---
-            List<RemarkVO> replies = buildReplyTree(curDO.get_id(), user);
-            curVO.setReplies(replies);
-            result.add(curVO);
-            log.info("show curVO"+curVO.toString());
+        Map<String, Long> counts = remarkPageLoader.countReplies(page.stream().map(RemarkDO::get_id).toList());
+        Map<String, RemarkVO> voMap = remarkViewResolver.resolve(page, loginUserId);
+        List<RemarkVO> items = new ArrayList<>(page.size());
+        for (RemarkDO reply : page) {
+            RemarkVO vo = voMap.get(reply.get_id());
+            vo.setReplyCount(counts.getOrDefault(reply.get_id(), 0L));
+            vo.setReplies(new ArrayList<>());
+            items.add(vo);
         }
-        return result;
+
+        return RemarkPageVO.builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? RemarkPageLoader.encodeCursor(page.get(page.size() - 1)) : null)
+                .build();
     }
 
     @Transactional
@@ -346,11 +252,19 @@ public class RemarkService {
         try {
             // 1. 转换 DTO 到 DO
             RemarkDO remarkDO = remarkConvert.toDO(remarkInsertDTO);
-            remarkDO.setCreatedAt(LocalDateTime.now().toString());
+            LocalDateTime now = LocalDateTime.now();
+            remarkDO.setCreatedAt(now.toString());
+            remarkDO.setCreatedTime(Date.from(now.atZone(ZoneId.systemDefault()).toInstant()));
             if(!remarkDO.getIsReply()){
                 remarkDO.setReplyToUsername(null);
                 remarkDO.setReplyToRemarkId(null);
                 remarkDO.setParentId(null);
+                remarkDO.setPath(RemarkTreeLoader.ROOT_PATH);
+            } else {
+                // 物化祖先路径：父评论 path + 父评论 ID
+                remarkDO.setPath(remarkRepository.findById(remarkDO.getParentId())
+                        .map(RemarkTreeLoader::childPath)
+                        .orElse(RemarkTreeLoader.ROOT_PATH + remarkDO.getParentId() + "/"));
             }
             // 2. 保存到数据库
             remarkRepository.save(remarkDO);
@@ -361,20 +275,12 @@ public class RemarkService {
             } else {
                 redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
             }
+            remarkTreeLoader.evict(remarkDO.getNoteId());
 
             // 4. 延时再删除一次（延时双删）
-            new Thread(() -> {
-                try {
-                    Thread.sleep(50); // 延时 50ms，可根据实际并发调整
-                    if (!remarkDO.getIsReply()) {
-                        redisTemplate.delete(NoteIdKey + remarkDO.getNoteId());
-                    } else {
-                        redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }).start();
+            invalidator.invalidateLater(DOUBLE_DELETE_DELAY,
+                    remarkDO.getIsReply() ? replyToIdKey + remarkDO.getParentId() : NoteIdKey + remarkDO.getNoteId(),
+                    RemarkTreeLoader.noteRemarkIdsKey(remarkDO.getNoteId()));
             noteStatsService.changeField(remarkDO.getNoteId(),"comments",1);
 
             // --- 创建通知 ---
@@ -415,73 +321,8 @@ public class RemarkService {
             RemarkDO remarkDO = remarkRepository.findById(remarkDeleteDTO.getId())
                     .orElseThrow(() -> new RuntimeException(
                             "Remark not found for ID: " + remarkDeleteDTO.getId()));
-            Long noteId=remarkDO.getNoteId();
-            // 2. 如果是接收的评论，先删除其子评论及点赞
-            if (Boolean.FALSE.equals(remarkDO.getIsReply())) {
-                String parentId = remarkDO.get_id();
-
-                // 从 Redis 获取子评论列表
-                String replyKey = replyToIdKey + parentId;
-                List<String> childIds = new ArrayList<>();
-                if (redisTemplate.hasKey(replyKey)) {
-                    List<Object> tmpList = redisTemplate.opsForList().range(replyKey, 0, -1);
-                    if (tmpList != null) {
-                        childIds = tmpList.stream().map(Object::toString).toList();
-                    }
-                }
-
-                // Redis 没有则从数据库加载
-                if (childIds.isEmpty()) {
-                    List<RemarkDO> childRemarks = remarkRepository.findRemarksByParentIdAndIsReplyTrue(parentId);
-                    for (RemarkDO child : childRemarks) {
-                        if (child != null && child.get_id() != null) {
-                            childIds.add(child.get_id());
-                        }
-                    }
-                }
-
-                // 删除子评论点赞和缓存
-                for (String childId : childIds) {
-                    remarkLikeByUsersRepository.deleteById(childId);
-                    remarkLikeCountRepository.deleteById(childId);
-                    redisTemplate.delete(remarkLikeCountKey + childId);
-                    redisTemplate.delete(userLikeRemarkListKey + childId);
-                    redisTemplate.delete(remarkIdKey + childId);
-                    noteStatsService.changeField(noteId,"comments",-1);
-                }
-
-                redisTemplate.delete(replyKey);
-                remarkRepository.deleteByParentId(parentId);
-            }
-
-            // 3. 删除该评论的点赞记录和数据库记录
-            remarkLikeByUsersRepository.deleteById(remarkDO.get_id());
-            remarkRepository.deleteById(remarkDO.get_id());
-            redisTemplate.delete(remarkLikeCountKey+remarkDO.get_id());
-            redisTemplate.delete(userLikeRemarkListKey+remarkDO.get_id());
-            // 4. 删除 Redis 缓存（第一次删除）
-            redisTemplate.delete(remarkIdKey + remarkDO.get_id());
-            if (!remarkDO.getIsReply()) {
-                redisTemplate.delete(NoteIdKey + remarkDO.getNoteId());
-            } else {
-                redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
-            }
-
-            // 5. 延时再删除一次缓存（延时双删）
-            new Thread(() -> {
-                try {
-                    Thread.sleep(50); // 延时 50ms
-                    redisTemplate.delete(remarkIdKey + remarkDO.get_id());
-                    if (!remarkDO.getIsReply()) {
-                        redisTemplate.delete(NoteIdKey + remarkDO.getNoteId());
-                    } else {
-                        redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }).start();
-            noteStatsService.changeField(noteId,"comments",-1);
+            // 2. 删除评论及其全部子评论
+            deleteRemarkSubtree(remarkDO);
             return Boolean.TRUE;
         } catch (Exception e) {
             System.err.println("Failed to delete remark: " + e.getMessage());
@@ -489,69 +330,9 @@ public class RemarkService {
         }
     }
 
-    /**
-     * 递归收集所有子评论ID（包括子评论的子评论）
-     * @param parentId 父评论ID
-     * @param allChildIds 收集所有子评论ID的列表
-     */
-    private void collectAllChildIds(String parentId, List<String> allChildIds) {
-        if (parentId == null || parentId.isEmpty()) {
-            return;
-        }
-
-        // 从 Redis 获取直接子评论列表
-        String replyKey = replyToIdKey + parentId;
-        List<String> directChildIds = new ArrayList<>();
-        if (redisTemplate.hasKey(replyKey)) {
-            List<Object> tmpList = redisTemplate.opsForList().range(replyKey, 0, -1);
-            if (tmpList != null) {
-                directChildIds = tmpList.stream().map(Object::toString).toList();
-            }
-        }
-
-        // Redis 没有则从数据库加载
-        if (directChildIds.isEmpty()) {
-            List<RemarkDO> childRemarks = remarkRepository.findRemarksByParentIdAndIsReplyTrue(parentId);
-            for (RemarkDO child : childRemarks) {
-                if (child != null && child.get_id() != null) {
-                    directChildIds.add(child.get_id());
-                }
-            }
-        }
-
-        // 递归处理每个子评论
-        for (String childId : directChildIds) {
-            if (!allChildIds.contains(childId)) {
-                allChildIds.add(childId);
-                // 递归收集子评论的子评论
-                collectAllChildIds(childId, allChildIds);
-            }
-        }
-    }
-
-    /**
-     * 删除单个评论及其相关数据（不删除子评论）
-     * @param remarkId 评论ID
-     * @param noteId 笔记ID
-     */
-    private void deleteSingleRemark(String remarkId, Long noteId) {
-        // 删除点赞记录和缓存
-        remarkLikeByUsersRepository.deleteById(remarkId);
-        remarkLikeCountRepository.deleteById(remarkId);
-        redisTemplate.delete(remarkLikeCountKey + remarkId);
-        redisTemplate.delete(userLikeRemarkListKey + remarkId);
-        redisTemplate.delete(remarkIdKey + remarkId);
-        
-        // 删除数据库记录
-        remarkRepository.deleteById(remarkId);
-        
-        // 更新评论统计
-        noteStatsService.changeField(noteId, "comments", -1);
-    }
-
     /**
      * 管理员删除评论（跳过权限检查，可删除任何评论）
-     * 递归删除所有子评论，但不影响父评论
+     * 删除所有子评论，但不影响父评论
      * @param remarkId 评论ID
      * @return 删除是否成功
      */
@@ -562,60 +343,8 @@ public class RemarkService {
             RemarkDO remarkDO = remarkRepository.findById(remarkId)
                     .orElseThrow(() -> new RuntimeException(
                             "Remark not found for ID: " + remarkId));
-            Long noteId = remarkDO.getNoteId();
-            
-            // 2. 递归收集所有子评论ID（包括子评论的子评论）
-            List<String> allChildIds = new ArrayList<>();
-            collectAllChildIds(remarkId, allChildIds);
-
-            // 3. 先删除所有子评论（从最深层开始删除，避免外键约束问题）
-            // 由于MongoDB没有外键约束，可以按任意顺序删除，但为了逻辑清晰，我们从后往前删除
-            for (String childId : allChildIds) {
-                deleteSingleRemark(childId, noteId);
-            }
-
-            // 4. 删除子评论的Redis缓存键
-            if (!allChildIds.isEmpty()) {
-                String replyKey = replyToIdKey + remarkId;
-                redisTemplate.delete(replyKey);
-                // 删除所有子评论的replyKey
-                for (String childId : allChildIds) {
-                    redisTemplate.delete(replyToIdKey + childId);
-                }
-                // 批量删除子评论
-                remarkRepository.deleteByParentId(remarkId);
-                // 递归删除所有子评论
-                for (String childId : allChildIds) {
-                    remarkRepository.deleteByParentId(childId);
-                }
-            }
-
-            // 5. 删除该评论本身
-            deleteSingleRemark(remarkId, noteId);
-            
-            // 6. 删除 Redis 缓存（第一次删除）
-            redisTemplate.delete(remarkIdKey + remarkId);
-            if (!remarkDO.getIsReply()) {
-                redisTemplate.delete(NoteIdKey + remarkDO.getNoteId());
-            } else {
-                redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
-            }
-
-            // 7. 延时再删除一次缓存（延时双删）
-            new Thread(() -> {
-                try {
-                    Thread.sleep(50); // 延时 50ms
-                    redisTemplate.delete(remarkIdKey + remarkId);
-                    if (!remarkDO.getIsReply()) {
-                        redisTemplate.delete(NoteIdKey + remarkDO.getNoteId());
-                    } else {
-                        redisTemplate.delete(replyToIdKey + remarkDO.getParentId());
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }).start();
-            
+            // 2. 删除评论及其全部子评论
+            deleteRemarkSubtree(remarkDO);
             return Boolean.TRUE;
         } catch (Exception e) {
             System.err.println("Failed to delete remark (admin): " + e.getMessage());
@@ -624,51 +353,53 @@ public class RemarkService {
         }
     }
 
+    /**
+     * 删除评论及其全部后代
+     * 子树通过 path 前缀一次查询、一次 deleteMany 删除；点赞记录、点赞数各一次批量删除；相关缓存 key 一次批量删除并延时双删
+     */
+    private void deleteRemarkSubtree(RemarkDO remarkDO) {
+        List<RemarkDO> subtree = remarkTreeLoader.deleteSubtree(remarkDO);
+        List<String> ids = subtree.stream().map(RemarkDO::get_id).toList();
+
+        // 1. 删除点赞记录与点赞数
+        remarkLikeRecordRepository.deleteByRemarkIdIn(ids);
+        remarkLikeCountRepository.deleteAllById(ids);
+
+        // 2. 删除 Redis 缓存（第一次删除）
+        List<String> keys = new ArrayList<>(ids.size() * 3 + 2);
+        for (String id : ids) {
+            keys.add(remarkIdKey + id);
+            keys.add(remarkLikeCountKey + id);
+            keys.add(replyToIdKey + id);
+        }
+        keys.add(Boolean.TRUE.equals(remarkDO.getIsReply())
+                ? replyToIdKey + remarkDO.getParentId()
+                : NoteIdKey + remarkDO.getNoteId());
+        keys.add(RemarkTreeLoader.noteRemarkIdsKey(remarkDO.getNoteId()));
+        redisTemplate.delete(keys);
 
-    @Transactional
-    public Boolean likeRemark(String remarkId, Long userId) {
-
-        String redisKey = userLikeRemarkListKey + remarkId;
-        log.info("starting like");
-        // 1. 检查用户是否已点赞
-        Boolean exists = false;
-        String userStr=userId.toString();
-        if (redisTemplate.hasKey(redisKey)) {
-            log.info("try to get from redis");
-            exists = redisTemplate.opsForSet().isMember(redisKey, userStr);
-            redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-            log.info("get from redis complete");
-        } else {
-            // Redis 无数据，则从数据库加载
-            log.info("try to get from db");
-            Optional<RemarkLikeByUsersDO> likeRecord =
-                    remarkLikeByUsersRepository.findById(remarkId);
-
-            if (likeRecord.isPresent()) {
+        // 3. 延时再删除一次缓存（延时双删）
+        invalidator.invalidateLater(DOUBLE_DELETE_DELAY, keys);
 
-                Set<Long> userList = likeRecord.get().getUserList();
+        // 4. 更新评论统计
+        noteStatsService.changeField(remarkDO.getNoteId(), "comments", -ids.size());
+    }
 
-                if (userList != null && !userList.isEmpty()) {
-                    exists = userList.contains(userId);
 
-                    // 同步整个 Set 到 Redis
-                    List<Long> tmpList=userList.stream().toList();
-                    tmpList.forEach(user->redisTemplate.opsForSet().add(redisKey,user));
-                    redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-                } else {
-                    exists = false;
-                }
-            } else {
-                exists = false;
-            }
-        }
+    @Transactional
+    public Boolean likeRemark(String remarkId, Long userId) {
 
-        if (Boolean.TRUE.equals(exists)) {
+        // 1~3. 写入 (remarkId, userId) 点赞记录，唯一索引保证重复点赞不会重复计数
+        try {
+            remarkLikeRecordRepository.insert(RemarkLikeRecordDO.builder()
+                    .remarkId(remarkId)
+                    .userId(userId)
+                    .createdTime(new Date())
+                    .build());
+        } catch (DuplicateKeyException e) {
             return false; // 已经点赞过
         }
-
-        // 3. 更新 Redis 缓存
-        redisTemplate.opsForSet().add(redisKey, userId);
+        markLikeDirty(remarkId);
 
         // 4. 更新评论的 likes 数
         String countKey = remarkLikeCountKey + remarkId;
@@ -722,54 +453,11 @@ public class RemarkService {
     @Transactional
     public Boolean cancelLikeRemark(String remarkId, Long userId) {
 
-        String redisKey = userLikeRemarkListKey + remarkId;
-
-        // 1. 判断是否已点赞（Redis → MongoDB）
-        Boolean exists = false;
-        if (redisTemplate.hasKey(redisKey)) {
-            exists = redisTemplate.opsForSet().isMember(redisKey, userId);
-            redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-        } else {
-            // Redis 无数据 → MongoDB 加载
-            Optional<RemarkLikeByUsersDO> likeRecord =
-                    remarkLikeByUsersRepository.findById(remarkId);
-
-            if (likeRecord.isPresent()) {
-                Set<Long> userList = likeRecord.get().getUserList();
-
-                if (userList != null && !userList.isEmpty()) {
-                    exists = userList.contains(userId);
-
-                    // 同步整个 Set 到 Redis
-                    List<Long> tmpList=userList.stream().toList();
-                    tmpList.forEach(user->redisTemplate.opsForSet().add(redisKey,user));
-                    redisTemplate.expire(redisKey,Duration.ofMinutes(15));
-                } else {
-                    exists = false;
-                }
-            } else {
-                exists = false;
-            }
+        // 1~3. 删除 (remarkId, userId) 点赞记录，删除条数为 0 说明根本没点赞过
+        if (remarkLikeRecordRepository.deleteByRemarkIdAndUserId(remarkId, userId) == 0) {
+            return false;
         }
-
-        if (!Boolean.TRUE.equals(exists)) {
-            return false; // 根本没点赞过
-        }
-
-
-        // 2. Redis 取消点赞
-        redisTemplate.opsForSet().remove(redisKey, userId);
-
-
-        // 3. MongoDB 中从 userList 移除用户
-        remarkLikeByUsersRepository.findById(remarkId).ifPresent(record -> {
-            Set<Long> userList = record.getUserList();
-            if (userList != null) {
-                userList.remove(userId);
-            }
-            remarkLikeByUsersRepository.save(record);
-        });
-
+        markLikeDirty(remarkId);
 
         // 4. 更新点赞计数（Redis → MongoDB）
         String countKey = remarkLikeCountKey + remarkId;
@@ -813,68 +501,55 @@ public class RemarkService {
         return true;
     }
 
-    public void flushLikeCountToMQ(){
-        Set<String> keys = redisTemplate.keys(remarkLikeCountKey + "*");
-        if (keys.isEmpty()) return;
-
-        keys.forEach(key -> {
-                String remarkId=key.split(":")[1];
-                if(remarkId==null){
-                    return;
-                }
-                Long likeCount=redisTemplate.opsForValue().increment(key,0L);
-                if(likeCount!=null){
-                    log.info(likeCount.toString());
-                }
-                if (likeCount==null) return;
-                Map<String, Object> msg = new HashMap<>();
-                msg.put("remarkId",remarkId);
-                msg.put("likeCount",likeCount);
-                rabbitTemplate.convertAndSend(LikeCountQueue, msg);
-        });
+    /**
+     * 从脏集合中分批 SPOP 出点赞数有变化的评论，每批发送一条消息
+     */
+    public void flushLikeCountToMQ() {
+        List<String> remarkIds;
+        while (!(remarkIds = popDirty(dirtyLikeCountKey)).isEmpty()) {
+            List<String> keys = remarkIds.stream().map(id -> remarkLikeCountKey + id).toList();
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+
+            List<Map<String, Object>> items = new ArrayList<>(remarkIds.size());
+            for (int i = 0; i < remarkIds.size(); i++) {
+                Object value = values != null && i < values.size() ? values.get(i) : null;
+                if (!(value instanceof Number n)) continue; // 计数缓存已过期，DB 中保留上次落库的值
+                Map<String, Object> item = new HashMap<>();
+                item.put("remarkId", remarkIds.get(i));
+                item.put("likeCount", Math.max(n.longValue(), 0L));
+                items.add(item);
+            }
+            sendBatch(LikeCountQueue, dirtyLikeCountKey, remarkIds, items);
+        }
     }
-    public void flushLikeUsersToMQ() {
-        // 获取所有点赞用户相关的 Redis key
-        Set<String> keys = redisTemplate.keys(userLikeRemarkListKey + "*"); // 假设前缀是 remarkUserLikeKey
-        if (keys.isEmpty()) return;
-
-        for (String key : keys) {
-            try {
-                // 1. 解析 remarkId（key 格式：remark_user_like:{remarkId}）
-                String[] parts = key.split(":");
-                if (parts.length < 2) {
-                    continue; // key 格式不正确时跳过
-                }
-                String remarkId = parts[1];
-
-                // 2. 获取 Redis Set 中所有用户
-                Set<Object> redisSet = redisTemplate.opsForSet().members(key);
-                Set<Long> userSet = new HashSet<>();
-                if (!redisSet.isEmpty()) {
-                    userSet = redisSet.stream()
-                            .map(val -> {
-                                try {
-                                    return Long.parseLong(val.toString());
-                                } catch (NumberFormatException e) {
-                                    return null; // 转换失败的值忽略
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toSet());
-                }
-                // 3. 构造发送消息
-                Map<String, Object> msg = new HashMap<>();
-                msg.put("remarkId", remarkId);
-                msg.put("users", userSet);
 
-                // 4. 发送到 RabbitMQ
-                rabbitTemplate.convertAndSend(LikeUsersQueue, msg);
+    /**
+     * 点赞 / 取消点赞后登记到脏集合，等待定时任务把点赞数落库
+     */
+    private void markLikeDirty(String remarkId) {
+        redisTemplate.opsForSet().add(dirtyLikeCountKey, remarkId);
+    }
 
-            } catch (Exception e) {
-                log.error("fail to send");
-            }
+    private List<String> popDirty(String dirtyKey) {
+        List<Object> popped = redisTemplate.opsForSet().pop(dirtyKey, LIKE_FLUSH_BATCH_SIZE);
+        if (popped == null || popped.isEmpty()) {
+            return List.of();
         }
+        return popped.stream().filter(Objects::nonNull).map(Object::toString).toList();
+    }
 
+    private void sendBatch(String queue, String dirtyKey, List<String> remarkIds, List<Map<String, Object>> items) {
+        if (items.isEmpty()) return;
+        try {
+            Map<String, Object> msg = new HashMap<>();
+            msg.put("items", items);
+            rabbitTemplate.convertAndSend(queue, msg);
+        } catch (Exception e) {
+            // 发送失败，放回脏集合等待下一轮
+            log.error("批量发送评论点赞消息失败, queue={}, size={}", queue, items.size(), e);
+            redisTemplate.opsForSet().add(dirtyKey, remarkIds.toArray());
+            throw e;
+        }
     }
 
     // --- 统计和列表查询 ---
@@ -950,36 +625,10 @@ public class RemarkService {
             throw new RuntimeException("用户不存在");
         }
 
-        List<RemarkDO> secondLevelRemarks = remarkRepository.findRemarksByParentIdAndIsReplyTrue(firstLevelRemark.get_id());
-
-        Comparator<RemarkDO> timeComparator = (r1, r2) -> {
-            String time1 = r1.getCreatedAt() != null ? r1.getCreatedAt() : "";
-            String time2 = r2.getCreatedAt() != null ? r2.getCreatedAt() : "";
-            return time1.compareTo(time2);
-        };
-        secondLevelRemarks.sort(timeComparator);
-
-        List<RemarkVO> secondLevelVOList = new ArrayList<>();
-        for (RemarkDO secondLevel : secondLevelRemarks) {
-            RemarkVO secondLevelVO = transferDO2VO(secondLevel, user);
-            
-            List<RemarkDO> thirdLevelRemarks = remarkRepository.findRemarksByParentIdAndIsReplyTrue(secondLevel.get_id());
-            thirdLevelRemarks.sort(timeComparator);
-            
-            List<RemarkVO> thirdLevelVOList = new ArrayList<>();
-            for (RemarkDO thirdLevel : thirdLevelRemarks) {
-                RemarkVO thirdLevelVO = transferDO2VO(thirdLevel, user);
-                thirdLevelVOList.add(thirdLevelVO);
-            }
-            
-            secondLevelVO.setReplies(thirdLevelVOList);
-            secondLevelVOList.add(secondLevelVO);
-        }
-
-        RemarkVO firstLevelVO = transferDO2VO(firstLevelRemark, user);
-        firstLevelVO.setReplies(secondLevelVOList);
-
-        return firstLevelVO;
+        // 一次前缀查询取出整棵子树，批量解析点赞 / 头像后在内存中组装
+        List<RemarkDO> subtree = remarkTreeLoader.loadSubtree(firstLevelRemark);
+        Map<String, RemarkVO> voMap = remarkViewResolver.resolve(subtree, user.getId());
+        return remarkTreeLoader.assembleSubtree(firstLevelRemark, subtree, r -> voMap.get(r.get_id()));
     }
 
     private RemarkDO findFirstLevelRemark(RemarkDO remark) {
@@ -988,6 +637,15 @@ public class RemarkService {
             return remark;
         }
 
+        // path 第一段即一级评论 ID，一次查询定位
+        String rootId = RemarkTreeLoader.rootIdOf(remark);
+        if (rootId != null) {
+            Optional<RemarkDO> root = remarkRepository.findById(rootId);
+            if (root.isPresent()) {
+                return root.get();
+            }
+        }
+
         Optional<RemarkDO> parent = remarkRepository.findById(remark.getParentId());
         if (parent.isEmpty()) {
  
@@ -0,0 +1,248 @@
+package com.project.login.service.remark;
+
+import com.project.login.model.dataobject.RemarkDO;
+import com.project.login.model.vo.RemarkVO;
+import com.mongodb.client.result.DeleteResult;
+import com.project.login.repository.RemarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 评论树加载器
+ * 一次性取出某篇笔记下的全部评论（Redis 命中走 LRANGE + MGET，未命中走一次 MongoDB 索引查询），
+ * 然后在内存中按 parentId 分组，O(n) 组装成 RemarkVO 树
+ * 任意评论的子树通过 path 字段的前缀查询一次取出 / 删除
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RemarkTreeLoader {
+
+    private final RemarkRepository remarkRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MongoTemplate mongoTemplate;
+
+    /** 一级评论的 path */
+    public static final String ROOT_PATH = "/";
+
+    private static final String REMARK_KEY_PREFIX = "remark:";
+    private static final String NOTE_REMARK_IDS_KEY_PREFIX = "note_remark_ids:";
+    private static final Duration CACHE_TTL = Duration.ofMinutes(15);
+
+    private static final Comparator<RemarkDO> TIME_ORDER = Comparator
+            .comparing((RemarkDO r) -> r.getCreatedAt() != null ? r.getCreatedAt() : "")
+            .thenComparing(r -> r.get_id() != null ? r.get_id() : "");
+
+    /**
+     * 加载某篇笔记下的全部评论（含所有层级的回复）
+     */
+    public List<RemarkDO> loadByNoteId(Long noteId) {
+        if (noteId == null) {
+            return new ArrayList<>();
+        }
+        String idsKey = noteRemarkIdsKey(noteId);
+
+        List<Object> cachedIds = redisTemplate.opsForList().range(idsKey, 0, -1);
+        if (cachedIds == null || cachedIds.isEmpty()) {
+            // Redis 未命中 → 一次 MongoDB 查询取全部评论
+            List<RemarkDO> remarks = remarkRepository.findRemarksByNoteId(noteId);
+            cacheRemarks(idsKey, remarks);
+            return remarks;
+        }
+
+        List<String> ids = cachedIds.stream().map(Object::toString).toList();
+        List<String> keys = ids.stream().map(id -> REMARK_KEY_PREFIX + id).toList();
+        List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+
+        List<RemarkDO> remarks = new ArrayList<>(ids.size());
+        List<String> missingIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values != null && i < values.size() ? values.get(i) : null;
+            if (value instanceof RemarkDO remarkDO) {
+                remarks.add(remarkDO);
+            } else {
+                missingIds.add(ids.get(i));
+            }
+        }
+
+        // 单条评论缓存过期 → 一次 $in 查询补齐
+        if (!missingIds.isEmpty()) {
+            List<RemarkDO> loaded = new ArrayList<>();
+            remarkRepository.findAllById(missingIds).forEach(loaded::add);
+            remarks.addAll(loaded);
+            cacheRemarks(null, loaded);
+        }
+        redisTemplate.expire(idsKey, CACHE_TTL);
+        return remarks;
+    }
+
+    /**
+     * 评论增删后调用，清除笔记级别的评论 ID 列表缓存
+     */
+    public void evict(Long noteId) {
+        if (noteId != null) {
+            redisTemplate.delete(noteRemarkIdsKey(noteId));
+        }
+    }
+
+    public static String noteRemarkIdsKey(Long noteId) {
+        return NOTE_REMARK_IDS_KEY_PREFIX + noteId;
+    }
+
+    /**
+     * 子评论的 path：父评论 path + 父评论 ID
+     */
+    public static String childPath(RemarkDO parent) {
+        String base = parent.getPath() != null ? parent.getPath() : ROOT_PATH;
+        return base + parent.get_id() + "/";
+    }
+
+    /**
+     * path 的第一段即所属一级评论 ID；一级评论或旧数据返回 null
+     */
+    public static String rootIdOf(RemarkDO remark) {
+        if (remark.getPath() == null) {
+            return null;
+        }
+        for (String segment : remark.getPath().split("/")) {
+            if (!segment.isEmpty()) return segment;
+        }
+        return null;
+    }
+
+    /**
+     * 一次前缀查询取出评论及其全部后代
+     * @return 第一个元素为 root 本身
+     */
+    public List<RemarkDO> loadSubtree(RemarkDO root) {
+        List<RemarkDO> subtree = new ArrayList<>();
+        subtree.add(root);
+        subtree.addAll(mongoTemplate.find(new Query(descendantsOf(root)), RemarkDO.class));
+        return subtree;
+    }
+
+    /**
+     * 删除评论及其全部后代：一次前缀查询取出子树（用于清理点赞与缓存），一次 deleteMany 删除
+     * @return 被删除的评论（第一个元素为 root 本身）
+     */
+    public List<RemarkDO> deleteSubtree(RemarkDO root) {
+        List<RemarkDO> subtree = loadSubtree(root);
+        DeleteResult result = mongoTemplate.remove(new Query(new Criteria().orOperator(
+                Criteria.where("_id").is(root.get_id()),
+                descendantsOf(root)
+        )), RemarkDO.class);
+        log.info("删除评论子树 rootId={}, 预期 {} 条, 实际删除 {} 条", root.get_id(), subtree.size(), result.getDeletedCount());
+        return subtree;
+    }
+
+    private static Criteria descendantsOf(RemarkDO root) {
+        // ID 为 ObjectId 十六进制串，前缀无需转义；"^" 锚定的前缀正则可以走 path 索引
+        return Criteria.where("path").regex("^" + childPath(root));
+    }
+
+    /**
+     * 把扁平评论列表组装成树：一级评论（isReply=false）为根，回复挂在 parentId 下，同级按时间正序
+     * @param remarks 笔记下的全部评论
+     * @param toVO DO → VO 转换
+     * @return 一级评论 VO 列表（replies 已递归填充）
+     */
+    public List<RemarkVO> assemble(List<RemarkDO> remarks, Function<RemarkDO, RemarkVO> toVO) {
+        Map<String, List<RemarkDO>> childrenByParent = groupByParent(remarks);
+        List<RemarkDO> roots = new ArrayList<>();
+        for (RemarkDO remark : remarks) {
+            if (remark != null && remark.get_id() != null && !Boolean.TRUE.equals(remark.getIsReply())) {
+                roots.add(remark);
+            }
+        }
+        roots.sort(TIME_ORDER);
+
+        List<RemarkVO> result = new ArrayList<>(roots.size());
+        Set<String> visited = new HashSet<>();
+        for (RemarkDO root : roots) {
+            result.add(toTree(root, childrenByParent, toVO, visited));
+        }
+        return result;
+    }
+
+    /**
+     * 以指定评论为根组装子树
+     * @param root 子树根（可以是任意层级的评论）
+     * @param remarks 子树内的评论（通常为 {@link #loadSubtree} 的结果）
+     */
+    public RemarkVO assembleSubtree(RemarkDO root, List<RemarkDO> remarks, Function<RemarkDO, RemarkVO> toVO) {
+        return toTree(root, groupByParent(remarks), toVO, new HashSet<>());
+    }
+
+    private Map<String, List<RemarkDO>> groupByParent(List<RemarkDO> remarks) {
+        Map<String, List<RemarkDO>> childrenByParent = new HashMap<>();
+        for (RemarkDO remark : remarks) {
+            if (remark == null || remark.get_id() == null) continue;
+            if (Boolean.TRUE.equals(remark.getIsReply()) && remark.getParentId() != null) {
+                childrenByParent.computeIfAbsent(remark.getParentId(), k -> new ArrayList<>()).add(remark);
+            }
+        }
+        childrenByParent.values().forEach(list -> list.sort(TIME_ORDER));
+        return childrenByParent;
+    }
+
+    private RemarkVO toTree(RemarkDO node,
+                            Map<String, List<RemarkDO>> childrenByParent,
+                            Function<RemarkDO, RemarkVO> toVO,
+                            Set<String> visited) {
+        visited.add(node.get_id());
+        RemarkVO vo = toVO.apply(node);
+        List<RemarkVO> replies = new ArrayList<>();
+        for (RemarkDO child : childrenByParent.getOrDefault(node.get_id(), List.of())) {
+            // 防御脏数据形成的环
+            if (visited.contains(child.get_id())) continue;
+            replies.add(toTree(child, childrenByParent, toVO, visited));
+        }
+        vo.setReplies(replies);
+        return vo;
+    }
+
+    /**
+     * 通过一次 pipeline 回写评论对象与笔记评论 ID 列表
+     * @param idsKey 为 null 时只回写评论对象
+     */
+    private void cacheRemarks(String idsKey, List<RemarkDO> remarks) {
+        if (remarks.isEmpty()) return;
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    if (idsKey != null) {
+                        ops.delete(idsKey);
+                    }
+                    for (RemarkDO remark : remarks) {
+                        if (remark.get_id() == null) continue;
+                        ops.opsForValue().set(REMARK_KEY_PREFIX + remark.get_id(), remark, CACHE_TTL);
+                        if (idsKey != null) {
+                            ops.opsForList().rightPush(idsKey, remark.get_id());
+                        }
+                    }
+                    if (idsKey != null) {
+                        ops.expire(idsKey, CACHE_TTL);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("回写评论缓存失败, idsKey={}", idsKey, e);
+        }
+    }
+}
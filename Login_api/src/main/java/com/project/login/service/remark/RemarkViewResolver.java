@@ -0,0 +1,163 @@
+package com.project.login.service.remark;
+
+import com.project.login.convert.RemarkConvert;
+import com.project.login.mapper.UserMapper;
+import com.project.login.model.dataobject.RemarkCountDO;
+import com.project.login.model.dataobject.RemarkDO;
+import com.project.login.model.dataobject.RemarkLikeRecordDO;
+import com.project.login.model.dataobject.UserDO;
+import com.project.login.model.vo.RemarkVO;
+import com.project.login.repository.RemarkLikeRecordRepository;
+import com.project.login.repository.RemarkLikeCountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 批量把一页 RemarkDO 转为 RemarkVO
+ * 点赞数走一次 Redis pipeline（未命中走一次 MongoDB $in），当前用户的点赞状态走一次 (user_id, remark_id) 索引查询，
+ * 作者头像走一次 MySQL IN 查询
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RemarkViewResolver {
+
+    private final RemarkConvert remarkConvert;
+    private final UserMapper userMapper;
+    private final RemarkLikeRecordRepository remarkLikeRecordRepository;
+    private final RemarkLikeCountRepository remarkLikeCountRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private static final String REMARK_LIKE_COUNT_KEY_PREFIX = "remark_like_count:";
+    private static final Duration CACHE_TTL = Duration.ofMinutes(15);
+
+    /** 每条评论在 pipeline 中的命令数：GET、EXPIRE */
+    private static final int COMMANDS_PER_REMARK = 2;
+
+    /**
+     * @param remarks 一页评论
+     * @param loginUserId 当前登录用户，可为 null（此时 LikedOrNot 恒为 false）
+     * @return remarkId → VO（未设置 replies）
+     */
+    public Map<String, RemarkVO> resolve(Collection<RemarkDO> remarks, Long loginUserId) {
+        List<RemarkDO> list = remarks.stream()
+                .filter(r -> r != null && r.get_id() != null)
+                .toList();
+        Map<String, RemarkVO> result = new LinkedHashMap<>();
+        if (list.isEmpty()) {
+            return result;
+        }
+
+        // ------ 1. 一次 pipeline 读取点赞数 ------
+        List<Object> replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (RemarkDO remark : list) {
+                    String countKey = REMARK_LIKE_COUNT_KEY_PREFIX + remark.get_id();
+                    ops.opsForValue().get(countKey);
+                    ops.expire(countKey, CACHE_TTL);
+                }
+                return null;
+            }
+        });
+
+        Map<String, Long> countMap = new HashMap<>();
+        List<String> countMisses = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            String id = list.get(i).get_id();
+            Object countObj = replies.get(i * COMMANDS_PER_REMARK);
+            if (countObj instanceof Number n) {
+                countMap.put(id, n.longValue());
+            } else {
+                countMisses.add(id);
+            }
+        }
+
+        // ------ 2. 计数缓存未命中 → MongoDB $in 批量加载并回写 ------
+        Map<String, Long> countsToCache = new HashMap<>();
+        if (!countMisses.isEmpty()) {
+            for (RemarkCountDO record : remarkLikeCountRepository.findAllById(countMisses)) {
+                if (record.getRemarkLikeCount() == null) continue;
+                countMap.put(record.getRemarkId(), record.getRemarkLikeCount());
+                countsToCache.put(record.getRemarkId(), record.getRemarkLikeCount());
+            }
+        }
+        writeBack(countsToCache);
+
+        // ------ 3. 当前用户对这一页评论的点赞状态：只查该用户自己的点赞记录 ------
+        Set<String> likedIds = loadLikedIds(list, loginUserId);
+
+        // ------ 4. MySQL IN 批量加载作者头像 ------
+        Map<Long, String> avatarMap = loadAvatars(list);
+
+        for (RemarkDO remark : list) {
+            RemarkVO vo = remarkConvert.toVO(remark);
+            vo.setLikedOrNot(likedIds.contains(remark.get_id()));
+            vo.setLikeCount(countMap.getOrDefault(remark.get_id(), 0L));
+            vo.setAvatarUrl(remark.getUserId() == null ? null : avatarMap.get(remark.getUserId()));
+            result.put(remark.get_id(), vo);
+        }
+        return result;
+    }
+
+    private Set<String> loadLikedIds(List<RemarkDO> list, Long loginUserId) {
+        Set<String> likedIds = new HashSet<>();
+        if (loginUserId == null) {
+            return likedIds;
+        }
+        List<String> remarkIds = list.stream().map(RemarkDO::get_id).toList();
+        for (RemarkLikeRecordDO record : remarkLikeRecordRepository.findByUserIdAndRemarkIdIn(loginUserId, remarkIds)) {
+            likedIds.add(record.getRemarkId());
+        }
+        return likedIds;
+    }
+
+    private Map<Long, String> loadAvatars(List<RemarkDO> list) {
+        Set<Long> userIds = new HashSet<>();
+        for (RemarkDO remark : list) {
+            if (remark.getUserId() != null) userIds.add(remark.getUserId());
+        }
+        Map<Long, String> avatarMap = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return avatarMap;
+        }
+        try {
+            for (UserDO user : userMapper.selectBriefByIds(userIds)) {
+                if (user.getAvatarUrl() != null) {
+                    avatarMap.put(user.getId(), user.getAvatarUrl());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("批量获取评论用户头像失败, userIds: {}", userIds, e);
+        }
+        return avatarMap;
+    }
+
+    private void writeBack(Map<String, Long> counts) {
+        if (counts.isEmpty()) return;
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    counts.forEach((remarkId, count) ->
+                            ops.opsForValue().set(REMARK_LIKE_COUNT_KEY_PREFIX + remarkId, count, CACHE_TTL));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("回写评论点赞缓存失败", e);
+        }
+    }
+}
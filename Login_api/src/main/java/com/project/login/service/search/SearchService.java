@@ -2,22 +2,18 @@ package com.project.login.service.search;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import com.project.login.convert.SearchConvert;
-import com.project.login.mapper.NoteStatsMapper;
 import com.project.login.model.dataobject.NoteStatsDO;
 import com.project.login.model.dto.search.NoteSearchDTO;
 import com.project.login.model.vo.NoteSearchVO;
+import com.project.login.service.notestats.NoteStatsBatchLoader;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.HashOperations;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,12 +25,7 @@ public class SearchService {
     @Qualifier("searchConvert")
     private final SearchConvert convert;
 
-    private final NoteStatsMapper noteStatsMapper;
-
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final StringRedisTemplate redis;
-
-    private static final String REDIS_KEY_PREFIX = "note_stats:";
+    private final NoteStatsBatchLoader noteStatsBatchLoader;
 
     public List<NoteSearchVO> searchNotes(NoteSearchDTO dto) {
         String keyword = dto.getKeyword();
@@ -78,7 +69,7 @@ public class SearchService {
                 .map(n -> n.vo.getNoteId())
                 .collect(Collectors.toList());
 
-        Map<Long, NoteStatsDO> statsMap = loadStatsFromRedisThenMySQL(noteIds);
+        Map<Long, NoteStatsDO> statsMap = noteStatsBatchLoader.load(noteIds);
 
         // 将统计数据写入 VO
         scoredNotes.forEach(sn -> {
@@ -111,77 +102,6 @@ public class SearchService {
         return scoredNotes.stream().map(sn -> sn.vo).collect(Collectors.toList());
     }
 
-    /**
-     * 批量从 Redis 加载统计数据，如果 Redis 没有则从 MySQL 取并写入 Redis
-     */
-    private Map<Long, NoteStatsDO> loadStatsFromRedisThenMySQL(List<Long> ids) {
-        Map<Long, NoteStatsDO> result = new HashMap<>();
-        HashOperations<String, Object, Object> ops = redis.opsForHash();
-
-        for (Long id : ids) {
-            String key = REDIS_KEY_PREFIX + id;
-            Map<Object, Object> map = ops.entries(key);
-
-            if (map == null || map.isEmpty()) {
-                // Redis 未命中 → 查询 MySQL
-                NoteStatsDO db = noteStatsMapper.getById(id);
-                if (db == null) {
-                    db = defaultStats(id);
-                }
-                writeStatsToRedis(key, ops, db);
-                map = ops.entries(key);
-            }
-
-            result.put(id, mapToStats(id, map));
-        }
-
-        return result;
-    }
-
-    private void writeStatsToRedis(String key, HashOperations<String, Object, Object> ops, NoteStatsDO db) {
-        ops.put(key, "authorName", db.getAuthorName());
-        ops.put(key, "views", String.valueOf(db.getViews()));
-        ops.put(key, "likes", String.valueOf(db.getLikes()));
-        ops.put(key, "favorites", String.valueOf(db.getFavorites()));
-        ops.put(key, "comments", String.valueOf(db.getComments()));
-        ops.put(key, "last_activity_at", db.getLastActivityAt() == null ? "" : db.getLastActivityAt().toString());
-        ops.put(key, "version", String.valueOf(db.getVersion()));
-        redisTemplate.expire(key, 7, TimeUnit.DAYS);
-    }
-
-
-    /**
-     * Redis Hash → DO
-     */
-    private NoteStatsDO mapToStats(Long id, Map<Object, Object> map) {
-        NoteStatsDO stats = new NoteStatsDO();
-        stats.setNoteId(id);
-        stats.setAuthorName(map.get("authorName").toString());
-        stats.setViews(Long.parseLong(map.getOrDefault("views", "0").toString()));
-        stats.setLikes(Long.parseLong(map.getOrDefault("likes", "0").toString()));
-        stats.setFavorites(Long.parseLong(map.getOrDefault("favorites", "0").toString()));
-        stats.setComments(Long.parseLong(map.getOrDefault("comments", "0").toString()));
-
-        String updatedStr = map.getOrDefault("updatedAt", "").toString();
-        stats.setUpdatedAt(updatedStr.isEmpty() ? null : LocalDateTime.parse(updatedStr));
-
-        stats.setVersion(Long.parseLong(map.getOrDefault("version", "0").toString()));
-        return stats;
-    }
-
-    private NoteStatsDO defaultStats(Long noteId) {
-        NoteStatsDO stats = new NoteStatsDO();
-        stats.setNoteId(noteId);
-        stats.setAuthorName("未知作者");
-        stats.setViews(0L);
-        stats.setLikes(0L);
-        stats.setFavorites(0L);
-        stats.setComments(0L);
-        stats.setVersion(0L);
-        stats.setUpdatedAt(null);
-        return stats;
-    }
-
     // 最近更新时间评分
     private double recencyScore(LocalDateTime updatedAt) {
         if (updatedAt == null) return 0;
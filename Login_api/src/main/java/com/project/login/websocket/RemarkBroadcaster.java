@@ -0,0 +1,258 @@
+package com.project.login.websocket;
+
+import com.project.login.model.vo.RemarkVO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 新评论的合并推送器
+ * 1. 写路径只把评论放入对应笔记 topic 的缓冲区，不在请求线程里发送 STOMP 帧
+ * 2. 每隔 flush-interval-ms 或缓冲区攒满 max-batch 条时，把一批评论合并成一帧（JSON 数组）推送
+ * 3. 单个 topic 的缓冲区超过 max-pending 时丢弃最旧的评论；排队超过 stale-ms 的评论不再推送
+ *    （前端下次拉取评论列表时自然会拿到），避免热门笔记拖慢所有订阅者
+ */
+@Slf4j
+@Component
+public class RemarkBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Value("${websocket.remark.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${websocket.remark.max-batch:50}")
+    private int maxBatch;
+
+    @Value("${websocket.remark.max-pending:500}")
+    private int maxPending;
+
+    @Value("${websocket.remark.stale-ms:5000}")
+    private long staleMs;
+
+    @Value("${websocket.remark.report-interval-ms:60000}")
+    private long reportIntervalMs;
+
+    /** 空闲超过该时间的 topic 缓冲区被回收 */
+    private static final long IDLE_EVICT_MS = 60_000L;
+
+    private final ConcurrentHashMap<Long, TopicBuffer> buffers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong receivedTotal = new AtomicLong();
+    private final AtomicLong sentTotal = new AtomicLong();
+    private final AtomicLong droppedTotal = new AtomicLong();
+    private final AtomicLong framesTotal = new AtomicLong();
+
+    /**
+     * 某个 topic 的吞吐快照
+     * @param inPerSec / outPerSec 最近一个统计周期内每秒入队 / 推送的评论数
+     */
+    public record TopicStats(Long noteId, int pending, long received, long sent, long dropped, long frames,
+                             double inPerSec, double outPerSec) {}
+
+    private static final class Item {
+        final RemarkVO remark;
+        final long enqueuedAt;
+
+        Item(RemarkVO remark, long enqueuedAt) {
+            this.remark = remark;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class TopicBuffer {
+        final ArrayDeque<Item> queue = new ArrayDeque<>();
+        final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong frames = new AtomicLong();
+        volatile long lastActiveAt = System.currentTimeMillis();
+        boolean closed;
+        // 上次统计时的计数，用于计算速率
+        long reportedReceived;
+        long reportedSent;
+        long reportedAt = System.currentTimeMillis();
+    }
+
+    public RemarkBroadcaster(SimpMessagingTemplate messagingTemplate,
+                             ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.messagingTemplate = messagingTemplate;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "remark-broadcaster");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::safeFlushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::safeReport, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+
+        meterRegistryProvider.ifAvailable(registry -> {
+            Gauge.builder("remark.broadcast.topics", buffers, Map::size).register(registry);
+            FunctionCounter.builder("remark.broadcast.received", receivedTotal, AtomicLong::get).register(registry);
+            FunctionCounter.builder("remark.broadcast.sent", sentTotal, AtomicLong::get).register(registry);
+            FunctionCounter.builder("remark.broadcast.dropped", droppedTotal, AtomicLong::get).register(registry);
+            FunctionCounter.builder("remark.broadcast.frames", framesTotal, AtomicLong::get).register(registry);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 把新评论放入笔记 topic 的缓冲区，立即返回
+     */
+    public void offer(Long noteId, RemarkVO remark) {
+        if (noteId == null || remark == null) return;
+        long now = System.currentTimeMillis();
+        while (true) {
+            TopicBuffer buffer = buffers.computeIfAbsent(noteId, k -> new TopicBuffer());
+            int size;
+            synchronized (buffer) {
+                if (buffer.closed) continue; // 恰好被回收，重新取一个
+                if (buffer.queue.size() >= maxPending) {
+                    // 背压：丢弃最旧的一条
+                    buffer.queue.pollFirst();
+                    buffer.dropped.incrementAndGet();
+                    droppedTotal.incrementAndGet();
+                }
+                buffer.queue.addLast(new Item(remark, now));
+                size = buffer.queue.size();
+            }
+            buffer.received.incrementAndGet();
+            buffer.lastActiveAt = now;
+            receivedTotal.incrementAndGet();
+
+            // 攒满一批不等定时器，立即交给推送线程
+            if (size >= maxBatch && buffer.flushScheduled.compareAndSet(false, true)) {
+                scheduler.execute(() -> {
+                    buffer.flushScheduled.set(false);
+                    safeFlush(noteId, buffer);
+                });
+            }
+            return;
+        }
+    }
+
+    /**
+     * 各 topic 的吞吐快照
+     */
+    public List<TopicStats> getTopicStats() {
+        List<TopicStats> stats = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        buffers.forEach((noteId, buffer) -> {
+            int pending;
+            synchronized (buffer) {
+                pending = buffer.queue.size();
+            }
+            double seconds = Math.max(now - buffer.reportedAt, 1L) / 1000.0;
+            stats.add(new TopicStats(noteId, pending,
+                    buffer.received.get(), buffer.sent.get(), buffer.dropped.get(), buffer.frames.get(),
+                    (buffer.received.get() - buffer.reportedReceived) / seconds,
+                    (buffer.sent.get() - buffer.reportedSent) / seconds));
+        });
+        return stats;
+    }
+
+    private void safeFlushAll() {
+        long now = System.currentTimeMillis();
+        buffers.forEach((noteId, buffer) -> {
+            safeFlush(noteId, buffer);
+            evictIfIdle(noteId, buffer, now);
+        });
+    }
+
+    private void safeFlush(Long noteId, TopicBuffer buffer) {
+        try {
+            flush(noteId, buffer);
+        } catch (Exception e) {
+            log.warn("推送评论批次失败, noteId={}", noteId, e);
+        }
+    }
+
+    /**
+     * 每次最多推送 max-batch 条；余下的留到下一个周期，由 max-pending 控制积压上限
+     */
+    private void flush(Long noteId, TopicBuffer buffer) {
+        long now = System.currentTimeMillis();
+        List<RemarkVO> batch = new ArrayList<>();
+        long stale = 0;
+        synchronized (buffer) {
+            while (batch.size() < maxBatch && !buffer.queue.isEmpty()) {
+                Item item = buffer.queue.pollFirst();
+                if (now - item.enqueuedAt > staleMs) {
+                    stale++;
+                    continue;
+                }
+                batch.add(item.remark);
+            }
+        }
+        if (stale > 0) {
+            buffer.dropped.addAndGet(stale);
+            droppedTotal.addAndGet(stale);
+        }
+        if (batch.isEmpty()) return;
+
+        messagingTemplate.convertAndSend(destinationOf(noteId), batch);
+        buffer.sent.addAndGet(batch.size());
+        buffer.frames.incrementAndGet();
+        sentTotal.addAndGet(batch.size());
+        framesTotal.incrementAndGet();
+    }
+
+    private void evictIfIdle(Long noteId, TopicBuffer buffer, long now) {
+        if (now - buffer.lastActiveAt < IDLE_EVICT_MS) return;
+        synchronized (buffer) {
+            if (!buffer.queue.isEmpty()) return;
+            buffer.closed = true;
+        }
+        buffers.remove(noteId, buffer);
+    }
+
+    private void safeReport() {
+        try {
+            long now = System.currentTimeMillis();
+            for (TopicStats stats : getTopicStats()) {
+                if (stats.inPerSec() > 0 || stats.outPerSec() > 0 || stats.pending() > 0) {
+                    log.info("评论推送 topic={} in={}/s out={}/s pending={} dropped={} frames={}",
+                            destinationOf(stats.noteId()),
+                            String.format("%.1f", stats.inPerSec()), String.format("%.1f", stats.outPerSec()),
+                            stats.pending(), stats.dropped(), stats.frames());
+                }
+            }
+            buffers.values().forEach(buffer -> {
+                buffer.reportedReceived = buffer.received.get();
+                buffer.reportedSent = buffer.sent.get();
+                buffer.reportedAt = now;
+            });
+        } catch (Exception e) {
+            log.warn("统计评论推送吞吐失败", e);
+        }
+    }
+
+    public static String destinationOf(Long noteId) {
+        return "/topic/note." + noteId + ".comments";
+    }
+}
@@ -0,0 +1,8 @@
+-- 补偿重放：指数退避的下次重试时间与最近一次失败原因
+ALTER TABLE note_stats_compensation
+    ADD COLUMN next_retry_at TIMESTAMP NULL AFTER retry_count,
+    ADD COLUMN last_error VARCHAR(255) NULL AFTER next_retry_at,
+    ADD INDEX idx_compensation_status_next_retry (status, next_retry_at);
+
+-- 旧逻辑下重试耗尽的记录重新进入队列，由新的退避策略处理
+UPDATE note_stats_compensation SET status = 'PENDING', retry_count = 0 WHERE status = 'FAILED';
@@ -0,0 +1,13 @@
+-- 笔记按天的活跃度汇总：由 Redis 中的小时桶每日汇总写入，保存超出 Redis 保留期的历史
+-- 不加外键：汇总按批写入，笔记删除后历史行保留也不影响查询
+CREATE TABLE IF NOT EXISTS note_stats_daily (
+    note_id    BIGINT NOT NULL,
+    stat_date  DATE NOT NULL,
+    views      BIGINT NOT NULL DEFAULT 0,
+    likes      BIGINT NOT NULL DEFAULT 0,
+    favorites  BIGINT NOT NULL DEFAULT 0,
+    comments   BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (note_id, stat_date),
+    INDEX idx_note_stats_daily_date (stat_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
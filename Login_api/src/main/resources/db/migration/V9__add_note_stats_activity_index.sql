@@ -0,0 +1,3 @@
+-- 预热按 (last_activity_at DESC, note_id DESC) 游标分页读取 note_stats，避免每页全表扫描 + filesort
+ALTER TABLE note_stats
+    ADD INDEX idx_note_stats_activity (last_activity_at, note_id);
@@ -17,6 +17,48 @@ export const getRemarksByNote = (noteId, loginUserId) => {
   }).then(res => res.data.data)
 }
 
+/**
+ * [对应后端: GET /api/v1/remark/note/page]
+ * 游标分页获取指定笔记的一级评论（每条附带前几条回复和回复总数）
+ * @param {number} noteId - 笔记ID
+ * @param {number} loginUserId - 当前登录用户ID
+ * @param {string} [cursor] - 上一页返回的 nextCursor，首页不传
+ * @param {number} [size=20] - 每页条数
+ * @param {number} [replySize=3] - 每条评论预加载的回复数
+ * @returns {Promise<Object>} 返回分页结果 (RemarkPageVO: items, nextCursor, hasMore)
+ */
+export const getRemarkPageByNote = (noteId, loginUserId, cursor, size = 20, replySize = 3) => {
+  return service.get('/remark/note/page', {
+    params: {
+      noteId: noteId,
+      loginUserId: loginUserId,
+      cursor: cursor,
+      size: size,
+      replySize: replySize
+    }
+  }).then(res => res.data.data)
+}
+
+/**
+ * [对应后端: GET /api/v1/remark/replies]
+ * 游标分页加载某条评论的更多回复
+ * @param {string} parentId - 父评论ID
+ * @param {number} loginUserId - 当前登录用户ID
+ * @param {string} [cursor] - 上一页返回的 nextCursor，首页不传
+ * @param {number} [size=10] - 每页条数
+ * @returns {Promise<Object>} 返回分页结果 (RemarkPageVO: items, nextCursor, hasMore)
+ */
+export const getReplyPage = (parentId, loginUserId, cursor, size = 10) => {
+  return service.get('/remark/replies', {
+    params: {
+      parentId: parentId,
+      loginUserId: loginUserId,
+      cursor: cursor,
+      size: size
+    }
+  }).then(res => res.data.data)
+}
+
 /**
  * [对应后端: POST /api/v1/remark/insert]
  * 插入一条新评论